@@ -0,0 +1,86 @@
+package maps.benchmarks;
+
+import maps.MapGenerator;
+import maps.Road;
+import maps.Settlement;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Measures the memory allocated, and the time taken, to visit every road of every settlement on a
+ * generated grid map: once with getAllRoads, which copies each settlement's list of roads, and then
+ * with the getRoad(index) and forEachRoad accessors, which don't copy anything. Allocation is read
+ * from the JVM's per thread allocation counter, so it needs a HotSpot based JVM.
+ * <p>
+ * Usage: java -cp benchmarks/target/benchmarks.jar maps.benchmarks.AdjacencyBenchmark [sizes...]
+ * (defaults to 10000 100000 1000000 settlements).
+ */
+public class AdjacencyBenchmark {
+
+    private static final int RUNS = 5;
+
+    public static void main(String args[]) {
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("This JVM can't measure allocation.");
+            return;
+        }
+        for (int size : sizes) {
+            ArrayList<Settlement> settlements =
+                    new MapGenerator(MapGenerator.Topology.GRID, size, 42).generate().getSettlements();
+            System.out.printf("%,d settlements:%n", settlements.size());
+            for (int way = 0; way < 3; way++) {
+                long bytes = Long.MAX_VALUE;
+                double millis = Double.MAX_VALUE;
+                double total = 0;
+                // The first runs warm up the JIT, the best run is reported.
+                for (int run = 0; run < RUNS; run++) {
+                    long startBytes = allocatedBytes();
+                    long start = System.nanoTime();
+                    total = visit(settlements, way);
+                    millis = Math.min(millis, (System.nanoTime() - start) / 1e6);
+                    bytes = Math.min(bytes, allocatedBytes() - startBytes);
+                }
+                System.out.printf("  %-14s %8.1f ms %,14d bytes (%.1f bytes/settlement), total length %.0f%n",
+                        new String[]{"getAllRoads", "getRoad(index)", "forEachRoad"}[way], millis, bytes,
+                        (double) bytes / settlements.size(), total);
+            }
+        }
+    }
+
+    /**
+     * Adds up the length of every road from every settlement, so each road is counted twice.
+     */
+    private static double visit(ArrayList<Settlement> settlements, int way) {
+        double total = 0;
+        for (int s = 0; s < settlements.size(); s++) {
+            Settlement u = settlements.get(s);
+            if (way == 0) {
+                for (Road r : u.getAllRoads()) {
+                    total += r.getLength();
+                }
+            } else if (way == 1) {
+                for (int i = 0; i < u.getRoadCount(); i++) {
+                    total += u.getRoad(i).getLength();
+                }
+            } else {
+                double[] sum = {0};
+                u.forEachRoad(r -> sum[0] += r.getLength());
+                total += sum[0];
+            }
+        }
+        return total;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
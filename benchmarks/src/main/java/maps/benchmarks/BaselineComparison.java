@@ -0,0 +1,136 @@
+package maps.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Compares two sets of JMH results written with -rf csv, such as a recorded baseline and a run after
+ * a change. Each benchmark, with each set of parameters and each profiler result such as
+ * gc.alloc.rate.norm, is matched up and the change in its score printed. A change is marked as a
+ * regression or an improvement only if it is more than the threshold and the two scores are further
+ * apart than their error margins, so noise isn't reported.
+ * <p>
+ * Usage: java -cp benchmarks/target/benchmarks.jar maps.benchmarks.BaselineComparison baseline.csv
+ * results.csv [threshold percent] (the threshold defaults to 5).
+ */
+public class BaselineComparison {
+
+    /**
+     * One line of a results file.
+     */
+    private static class Result {
+        private final double score;
+        private final double error;
+        private final String unit;
+
+        Result(double score, double error, String unit) {
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+    }
+
+    public static void main(String args[]) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison baseline.csv results.csv [threshold percent]");
+            System.exit(2);
+        }
+        LinkedHashMap<String, Result> baseline = read(args[0]);
+        LinkedHashMap<String, Result> results = read(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+        int regressions = 0;
+        for (java.util.Map.Entry<String, Result> e : results.entrySet()) {
+            Result before = baseline.get(e.getKey());
+            Result after = e.getValue();
+            if (before == null) {
+                System.out.printf("%-90s %14s %14.3f %s  new%n", e.getKey(), "", after.score, after.unit);
+                continue;
+            }
+            double change = before.score == 0 ? 0 : (after.score - before.score) / before.score * 100;
+            boolean significant = Math.abs(change) > threshold
+                    && Math.abs(after.score - before.score) > before.error + after.error;
+            // Every score is a time or an amount allocated, except throughput, where more is better.
+            boolean worse = after.unit.endsWith("/s") || after.unit.startsWith("ops/") ? change < 0 : change > 0;
+            String verdict = !significant ? "" : worse ? "  REGRESSION" : "  improvement";
+            if (significant && worse) {
+                regressions++;
+            }
+            System.out.printf("%-90s %14.3f %14.3f %s %+7.1f%%%s%n", e.getKey(), before.score, after.score,
+                    after.unit, change, verdict);
+        }
+        System.out.println(regressions + " regressions over " + threshold + "%.");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+
+    /**
+     * Reads a JMH CSV results file.
+     *
+     * @return Returns the results by benchmark name and parameters.
+     */
+    private static LinkedHashMap<String, Result> read(String file) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(file));
+        LinkedHashMap<String, Result> results = new LinkedHashMap<>();
+        if (lines.isEmpty()) {
+            return results;
+        }
+        ArrayList<String> header = fields(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        for (String line : lines.subList(1, lines.size())) {
+            ArrayList<String> row = fields(line);
+            if (row.size() != header.size()) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(row.get(benchmark));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && !row.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(row.get(i));
+                }
+            }
+            results.put(key.toString(), new Result(number(row.get(score)), number(row.get(error)), row.get(unit)));
+        }
+        return results;
+    }
+
+    private static double number(String field) {
+        try {
+            return Double.parseDouble(field);
+        } catch (NumberFormatException e) {
+            // JMH writes NaN as an empty or non-numeric error for single samples.
+            return 0;
+        }
+    }
+
+    /**
+     * Splits a CSV line, where any field may be in double quotes.
+     */
+    private static ArrayList<String> fields(String line) {
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,91 @@
+package maps.benchmarks;
+
+import maps.Map;
+import maps.MapGenerator;
+import maps.Road;
+import maps.RoutingMode;
+import maps.Settlement;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how route queries scale with the number of threads asking them while the map is being
+ * changed. Each thread runs A* queries between random settlements of a grid map for a fixed time,
+ * while another thread changes the length of a random road every EDIT_INTERVAL milliseconds. It
+ * also times a single edit, which only copies the chunks of the snapshot it changes.
+ * <p>
+ * Usage: java -cp benchmarks/target/benchmarks.jar maps.benchmarks.ConcurrentRoutingBenchmark [size]
+ * [seconds per thread count] (defaults to 100000 and 3).
+ */
+public class ConcurrentRoutingBenchmark {
+
+    private static final int EDIT_INTERVAL = 100;
+    private static final int EDITS = 1000;
+
+    public static void main(String args[]) throws InterruptedException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        Map map = new MapGenerator(MapGenerator.Topology.GRID, size, 42).generate();
+        ArrayList<Settlement> settlements = new ArrayList<>(map.getSettlements());
+        ArrayList<Road> roads = new ArrayList<>(map.getRoads());
+        System.out.printf("%,d settlements, %d cores%n", settlements.size(), Runtime.getRuntime().availableProcessors());
+
+        // The cost of publishing one edit, along with the routing graph made for it.
+        Random random = new Random(3);
+        long start = System.nanoTime();
+        for (int i = 0; i < EDITS; i++) {
+            Road r = roads.get(random.nextInt(roads.size()));
+            r.setLength(r.getLength());
+        }
+        System.out.printf("one edit publishes a new snapshot in %.1f us%n", (System.nanoTime() - start) / 1e3 / EDITS);
+
+        double single = 0;
+        for (int threads = 1; threads <= 2 * Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            AtomicBoolean stop = new AtomicBoolean();
+            AtomicLong queries = new AtomicLong();
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                workers[t] = new Thread(() -> {
+                    Random r = new Random(seed);
+                    while (!stop.get()) {
+                        map.findRoute(settlements.get(r.nextInt(settlements.size())),
+                                settlements.get(r.nextInt(settlements.size())), RoutingMode.ASTAR);
+                        queries.incrementAndGet();
+                    }
+                });
+            }
+            Thread editor = new Thread(() -> {
+                Random r = new Random(5);
+                while (!stop.get()) {
+                    Road road = roads.get(r.nextInt(roads.size()));
+                    road.setLength(road.getLength() * (0.9 + 0.2 * r.nextDouble()));
+                    try {
+                        Thread.sleep(EDIT_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            for (Thread w : workers) {
+                w.start();
+            }
+            editor.start();
+            Thread.sleep(seconds * 1000L);
+            stop.set(true);
+            for (Thread w : workers) {
+                w.join();
+            }
+            editor.join();
+            double perSecond = queries.get() / (double) seconds;
+            if (threads == 1) {
+                single = perSecond;
+            }
+            System.out.printf("%2d threads: %,.0f queries/s (%.2fx one thread), map version %d%n", threads,
+                    perSecond, perSecond / single, map.getSnapshot().getVersion());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package maps.benchmarks;
+
+import maps.Classification;
+import maps.Map;
+import maps.MapFileParser;
+import maps.MapGenerator;
+import maps.MapSnapshot;
+import maps.RoadRecord;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Times reading roads.txt files of increasing size with MapFileParser, to check that the time grows
+ * linearly with the number of roads. For the smaller files it also times the Scanner based reading
+ * that Map.load used to do. Then it times Map.load on a grid map with about as many roads, first from
+ * the text files and then from the binary snapshot.
+ * <p>
+ * Usage: java -cp benchmarks/target/benchmarks.jar maps.benchmarks.LoadBenchmark [road counts...]
+ * (defaults to 10000 100000 1000000 roads).
+ */
+public class LoadBenchmark {
+
+    // The Scanner version takes minutes on the largest file, so it is only run up to this size.
+    private static final int SCANNER_LIMIT = 100000;
+    private static final int RUNS = 3;
+
+    public static void main(String args[]) throws IOException {
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int size : sizes) {
+            File file = File.createTempFile("roads", ".txt");
+            file.deleteOnExit();
+            writeRoads(file, size);
+
+            double parserMillis = Double.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                MapFileParser.Result<RoadRecord> result = MapFileParser.readRoads(file.getPath());
+                parserMillis = Math.min(parserMillis, (System.nanoTime() - start) / 1e6);
+                if (result.items.size() != size || !result.errors.isEmpty()) {
+                    throw new IllegalStateException("Read " + result.items.size() + " roads and "
+                            + result.errors.size() + " errors from a file of " + size + " roads.");
+                }
+            }
+            System.out.printf("%,d roads (%,d KB): parser %.1f ms (%.0f ns/road)", size, file.length() / 1024,
+                    parserMillis, parserMillis * 1e6 / size);
+            if (size <= SCANNER_LIMIT) {
+                long start = System.nanoTime();
+                scannerRead(file);
+                double scannerMillis = (System.nanoTime() - start) / 1e6;
+                System.out.printf(", Scanner %.1f ms (%.0fx slower)", scannerMillis, scannerMillis / parserMillis);
+            }
+            System.out.println();
+            file.delete();
+
+            // Then whole map loads, which also build the settlements, roads and indexes.
+            File directory = Files.createTempDirectory("map").toFile();
+            new MapGenerator(MapGenerator.Topology.GRID, size / 2, 42).generate().save(directory);
+            File snapshot = new File(directory, MapSnapshot.FILE_NAME);
+            File hidden = new File(directory, MapSnapshot.FILE_NAME + ".hidden");
+            snapshot.renameTo(hidden);
+            long start = System.nanoTime();
+            new Map().load(directory);
+            double textMillis = (System.nanoTime() - start) / 1e6;
+            hidden.renameTo(snapshot);
+            start = System.nanoTime();
+            new Map().load(directory);
+            double snapshotMillis = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%,d roads: Map.load from text %.1f ms, from %s %.1f ms (%,d KB)%n", size, textMillis,
+                    MapSnapshot.FILE_NAME, snapshotMillis, snapshot.length() / 1024);
+            for (File f : directory.listFiles()) {
+                f.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Writes a roads file in the format Map.save uses, with made up names and lengths.
+     */
+    private static void writeRoads(File file, int size) throws IOException {
+        Random random = new Random(42);
+        Classification[] classes = Classification.values();
+        try (PrintWriter outfile = new PrintWriter(new FileWriter(file))) {
+            outfile.println(size);
+            for (int i = 0; i < size; i++) {
+                outfile.println("R" + i + ":" + classes[random.nextInt(classes.length)] + ":" +
+                        (1 + random.nextDouble() * 50) + ":S" + random.nextInt(size) + ":S" + random.nextInt(size));
+            }
+        }
+    }
+
+    /**
+     * Reads the roads the way Map.load used to, with a regular expression delimiter.
+     */
+    private static void scannerRead(File file) throws IOException {
+        try (Scanner infile = new Scanner(new FileReader(file))) {
+            infile.useDelimiter("\r?\n|\r|:");
+            int roadTotal = infile.nextInt();
+            infile.nextLine();
+            for (int i = 0; i < roadTotal; i++) {
+                infile.next();
+                Classification.valueOf(infile.next());
+                infile.nextDouble();
+                infile.next();
+                infile.next();
+            }
+        }
+    }
+}
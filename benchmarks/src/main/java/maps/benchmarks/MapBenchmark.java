@@ -0,0 +1,67 @@
+package maps.benchmarks;
+
+import maps.Map;
+import maps.MapGenerator;
+import maps.Settlement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times looking settlements up by name, and Map.toString, which lists every settlement and road.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapBenchmark {
+
+    private static final int NAMES = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"GRID", "RANDOM_GEOMETRIC", "SCALE_FREE", "HIERARCHICAL"})
+    public MapGenerator.Topology topology;
+
+    private Map map;
+    // Half of the names are on the map and half aren't.
+    private String[] names = new String[NAMES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        map = new MapGenerator(topology, size, 42).generate();
+        ArrayList<Settlement> settlements = map.getSettlements();
+        Random random = new Random(7);
+        for (int i = 0; i < NAMES; i++) {
+            names[i] = i % 2 == 0 ? settlements.get(random.nextInt(settlements.size())).getName()
+                    : "Nowhere" + random.nextInt(size);
+        }
+    }
+
+    @Benchmark
+    public Settlement getSettlement() {
+        return map.getSettlement(names[next++ & (NAMES - 1)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String mapToString() {
+        return map.toString();
+    }
+}
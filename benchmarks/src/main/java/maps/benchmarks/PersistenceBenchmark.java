@@ -0,0 +1,130 @@
+package maps.benchmarks;
+
+import maps.Map;
+import maps.MapGenerator;
+import maps.MapSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times Map.save and Map.load on a map in a temporary directory. Loading is timed from the text
+ * files and from the binary snapshot, which Map.load uses whenever it is newer than the text files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    /**
+     * Which files the map is loaded from.
+     */
+    public enum Format {
+        TEXT, SNAPSHOT
+    }
+
+    /**
+     * A map saved in a temporary directory.
+     */
+    @State(Scope.Benchmark)
+    public static class SavedMap {
+        @Param({"1000", "10000", "100000"})
+        public int size;
+
+        @Param({"GRID", "RANDOM_GEOMETRIC", "SCALE_FREE", "HIERARCHICAL"})
+        public MapGenerator.Topology topology;
+
+        Map map;
+        File directory;
+        private PrintStream out;
+
+        @Setup
+        public void setUp() throws IOException {
+            // The map reports every save and load, which would swamp JMH's own output.
+            out = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            directory = Files.createTempDirectory("maps").toFile();
+            map = new MapGenerator(topology, size, 42).generate();
+            map.save(directory);
+            saved();
+        }
+
+        /**
+         * Called once the map has been saved, to change what is in the directory.
+         */
+        protected void saved() {
+        }
+
+        @TearDown
+        public void tearDown() {
+            map.close();
+            for (File f : directory.listFiles()) {
+                f.delete();
+            }
+            directory.delete();
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * A saved map to load, from the text files only or from the snapshot.
+     */
+    @State(Scope.Benchmark)
+    public static class LoadableMap extends SavedMap {
+        @Param({"TEXT", "SNAPSHOT"})
+        public Format format;
+
+        private Map loaded;
+
+        @Override
+        protected void saved() {
+            map.close();
+            if (format == Format.TEXT) {
+                new File(directory, MapSnapshot.FILE_NAME).delete();
+            }
+        }
+
+        /**
+         * Loading opens a journal in the directory, which has to be closed before the next load.
+         */
+        @TearDown(Level.Invocation)
+        public void closeJournal() {
+            if (loaded != null) {
+                loaded.close();
+            }
+        }
+    }
+
+    @Benchmark
+    public Map load(LoadableMap state) throws IOException {
+        Map map = new Map();
+        state.loaded = map;
+        map.load(state.directory);
+        return map;
+    }
+
+    @Benchmark
+    public Map save(SavedMap state) throws IOException {
+        state.map.save(state.directory);
+        return state.map;
+    }
+}
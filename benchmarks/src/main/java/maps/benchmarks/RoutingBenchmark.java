@@ -0,0 +1,65 @@
+package maps.benchmarks;
+
+import maps.Dijkstras;
+import maps.Map;
+import maps.MapGenerator;
+import maps.Road;
+import maps.Settlement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times Dijkstras.shortestRoute between random pairs of settlements. Each call takes the next of a
+ * fixed list of pairs, so every run of the benchmark asks for the same routes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private static final int PAIRS = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"GRID", "RANDOM_GEOMETRIC", "SCALE_FREE", "HIERARCHICAL"})
+    public MapGenerator.Topology topology;
+
+    private Map map;
+    private Settlement[] sources = new Settlement[PAIRS];
+    private Settlement[] destinations = new Settlement[PAIRS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        map = new MapGenerator(topology, size, 42).generate();
+        ArrayList<Settlement> settlements = map.getSettlements();
+        Random random = new Random(7);
+        for (int i = 0; i < PAIRS; i++) {
+            sources[i] = settlements.get(random.nextInt(settlements.size()));
+            destinations[i] = settlements.get(random.nextInt(settlements.size()));
+        }
+    }
+
+    @Benchmark
+    public ArrayList<Road> shortestRoute() {
+        int i = next++ & (PAIRS - 1);
+        return new Dijkstras(map, sources[i]).shortestRoute(destinations[i]);
+    }
+}
@@ -0,0 +1,106 @@
+package maps.benchmarks;
+
+import maps.LatencyHistogram;
+import maps.Map;
+import maps.MapGenerator;
+import maps.RoutingService;
+import maps.Settlement;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many clients one RoutingService can serve. It serves a grid map on a free port of
+ * this machine, then for each number of clients runs that many threads for a fixed time, each
+ * sending a request as soon as the last was answered. Most requests are A* routes between random
+ * settlements, and one in ten looks up a settlement. It prints the throughput and latencies seen by
+ * the clients for each number of clients, and the latencies the service recorded at the end.
+ * <p>
+ * Usage: java -cp benchmarks/target/benchmarks.jar maps.benchmarks.RoutingLoadTest [size]
+ * [seconds per client count] [most clients] (defaults to 10000, 3 and 64).
+ */
+public class RoutingLoadTest {
+
+    public static void main(String args[]) throws IOException, InterruptedException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int mostClients = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        Map map = new MapGenerator(MapGenerator.Topology.GRID, size, 42).generate();
+        ArrayList<String> names = new ArrayList<>();
+        for (Settlement s : map.getSettlements()) {
+            names.add(URLEncoder.encode(s.getName(), StandardCharsets.UTF_8));
+        }
+        RoutingService service = new RoutingService(map, 0);
+        service.start();
+        String base = "http://localhost:" + service.getPort();
+        System.out.printf("%,d settlements, %d cores, %s%n", names.size(), Runtime.getRuntime().availableProcessors(),
+                service.usesVirtualThreads() ? "virtual threads" : "a thread pool");
+
+        for (int clients = 1; clients <= mostClients; clients *= 2) {
+            LatencyHistogram latency = new LatencyHistogram();
+            AtomicBoolean stop = new AtomicBoolean();
+            AtomicLong errors = new AtomicLong();
+            Thread[] workers = new Thread[clients];
+            for (int c = 0; c < clients; c++) {
+                long seed = c;
+                workers[c] = new Thread(() -> {
+                    Random random = new Random(seed);
+                    while (!stop.get()) {
+                        String from = names.get(random.nextInt(names.size()));
+                        String request = random.nextInt(10) == 0 ? "/settlement?name=" + from
+                                : "/route?mode=ASTAR&from=" + from + "&to=" + names.get(random.nextInt(names.size()));
+                        long start = System.nanoTime();
+                        if (get(base + request) != 200) {
+                            errors.incrementAndGet();
+                        }
+                        latency.record(System.nanoTime() - start);
+                    }
+                });
+                workers[c].start();
+            }
+            Thread.sleep(seconds * 1000L);
+            stop.set(true);
+            for (Thread w : workers) {
+                w.join();
+            }
+            System.out.printf("%3d clients: %,8.0f requests/s, %,d errors, %s%n", clients,
+                    latency.getCount() / (double) seconds, errors.get(), latency);
+        }
+
+        System.out.println("Recorded by the service:");
+        for (java.util.Map.Entry<String, LatencyHistogram> e : service.getLatencies().entrySet()) {
+            if (e.getValue().getCount() > 0) {
+                System.out.println("  " + e.getKey() + ": " + e.getValue());
+            }
+        }
+        service.stop();
+    }
+
+    /**
+     * Sends a GET request and reads the whole answer, so the connection can be kept for the next.
+     *
+     * @return Returns the status code, or -1 if the request failed.
+     */
+    private static int get(String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    in.readAllBytes();
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
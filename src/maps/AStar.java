@@ -0,0 +1,226 @@
+package maps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+/**
+ * The A* search algorithm, which is Dijkstra's algorithm ordered by the distance so far plus an
+ * estimate of the distance left. The estimate is the straight line distance to the destination
+ * multiplied by the routing graph's smallest miles per straight line mile, so it never
+ * overestimates and the route found is still the shortest. If any settlement has no location
+ * the estimate is always 0 and the search is the same as Dijkstra's.
+ * <p>
+ * When given landmarks the estimate comes from their precomputed distances instead (the ALT
+ * algorithm), which works whether or not settlements have locations.
+ */
+public class AStar {
+
+    private RoutingGraph graph;
+    // landmarks giving the estimate, null to use the straight line distance
+    private Landmarks landmarks;
+    // the landmarks picked for the current query
+    private int[] active;
+    // the cost of a mile on the cheapest road for the current query, turning estimated miles into cost
+    private double costPerMile = 1;
+    // distances from the source
+    private double[] dist;
+    // estimated distance left to the destination, NaN until worked out
+    private double[] estimate;
+    // the edge taken into each settlement, -1 if there isn't one.
+    private int[] prev;
+    private BitSet visited;
+    private IndexedMinHeap Q;
+    private int[] touched;
+    private int touchedCount;
+    private int settled;
+    private int relaxed;
+
+    /**
+     * Constructor which allocates the search arrays for the graph. They are reused by every query.
+     *
+     * @param graph The routing graph to be operated on.
+     */
+    public AStar(RoutingGraph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * Constructor for an A* search which estimates the miles left with landmarks.
+     *
+     * @param graph     The routing graph to be operated on.
+     * @param landmarks Landmarks worked out for the same routing graph, or null to use locations.
+     */
+    public AStar(RoutingGraph graph, Landmarks landmarks) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        int n = graph.capacity();
+        dist = new double[n];
+        estimate = new double[n];
+        prev = new int[n];
+        visited = new BitSet(n);
+        Q = new IndexedMinHeap(n);
+        touched = new int[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(estimate, Double.NaN);
+        Arrays.fill(prev, -1);
+    }
+
+    /**
+     * @return Returns the routing graph this search runs on.
+     */
+    RoutingGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Moves the search on to another routing graph, usually a later version of the one it was built
+     * for, so its arrays can be reused.
+     *
+     * @param newGraph     The routing graph to search.
+     * @param newLandmarks Landmarks worked out for that graph, or null to use locations.
+     * @return Returns false, leaving the search as it was, if the graph has too many settlements for its arrays.
+     */
+    boolean useGraph(RoutingGraph newGraph, Landmarks newLandmarks) {
+        if (newGraph.size() > dist.length) {
+            return false;
+        }
+        graph = newGraph;
+        landmarks = newLandmarks;
+        return true;
+    }
+
+    /**
+     * @return Returns the landmarks used for the estimate, or null if locations are used.
+     */
+    Landmarks getLandmarks() {
+        return landmarks;
+    }
+
+    /**
+     * @return Returns the number of settlements settled during the last query.
+     */
+    public int getSettledCount() {
+        return settled;
+    }
+
+    /**
+     * @return Returns the number of roads looked along during the last query.
+     */
+    public int getRelaxedCount() {
+        return relaxed;
+    }
+
+    /**
+     * @return Returns the number of heap operations during the last query.
+     */
+    public int getHeapOperationCount() {
+        return Q.getOperationCount();
+    }
+
+    /**
+     * Calculates the shortest route between the source and destination settlements.
+     *
+     * @param source The settlement to start from.
+     * @param dest   The destination settlement to be routed towards.
+     * @return An ArrayList of roads in the order of the route, or null if dest can't be reached.
+     */
+    public ArrayList<Road> shortestRoute(Settlement source, Settlement dest) {
+        return shortestRoute(source, dest, CostProfile.SHORTEST);
+    }
+
+    /**
+     * Calculates the route with the least cost by a cost profile between the source and destination
+     * settlements. The estimate of the miles left is multiplied by the profile's cheapest cost per
+     * mile, so it still never overestimates.
+     *
+     * @param source  The settlement to start from.
+     * @param dest    The destination settlement to be routed towards.
+     * @param profile What the route is to have the least of.
+     * @return An ArrayList of roads in the order of the route, or null if dest can't be reached.
+     */
+    public ArrayList<Road> shortestRoute(Settlement source, Settlement dest, CostProfile profile) {
+        int s = graph.getId(source);
+        int t = graph.getId(dest);
+        reset();
+        if (s == -1 || t == -1) {
+            return null;
+        }
+        int[] targets = graph.targets;
+        double[] weights = graph.weights(profile);
+        costPerMile = profile.getMinimumCostPerMile();
+        if (landmarks != null) {
+            active = landmarks.chooseActive(s, t);
+        }
+
+        dist[s] = 0;
+        touched[touchedCount++] = s;
+        Q.insertOrDecrease(s, estimate(s, t));
+        while (!Q.isEmpty()) {
+            int u = Q.poll();
+            visited.set(u);
+            settled++;
+            if (u == t) {
+                break;
+            }
+            int end = graph.edgeEnd(u);
+            relaxed += end - graph.edgeStart(u);
+            for (int e = graph.edgeStart(u); e < end; e++) {
+                int v = targets[e];
+                if (visited.get(v)) {
+                    continue;
+                }
+                double alt = dist[u] + weights[e];
+                if (alt < dist[v]) {
+                    if (dist[v] == Double.POSITIVE_INFINITY) {
+                        touched[touchedCount++] = v;
+                    }
+                    dist[v] = alt;
+                    prev[v] = e;
+                    Q.insertOrDecrease(v, alt + estimate(v, t));
+                }
+            }
+        }
+        return visited.get(t) ? grabRoute(s, t) : null;
+    }
+
+    /**
+     * Works out, or looks up, the lower bound on the miles left from v to the destination t, and
+     * returns it as a lower bound on the cost.
+     */
+    private double estimate(int v, int t) {
+        if (Double.isNaN(estimate[v]) && landmarks != null) {
+            estimate[v] = landmarks.lowerBound(active, v, t);
+        } else if (Double.isNaN(estimate[v])) {
+            double ratio = graph.getMilesPerDistance();
+            estimate[v] = ratio == 0 ? 0 : ratio * Settlement.greatCircleMiles(graph.latitude(v),
+                    graph.longitude(v), graph.latitude(t), graph.longitude(t));
+        }
+        return estimate[v] * costPerMile;
+    }
+
+    private ArrayList<Road> grabRoute(int s, int t) {
+        ArrayList<Road> ret = new ArrayList<>();
+        while (t != s) {
+            int e = prev[t];
+            ret.add(graph.getRoad(e));
+            t = graph.edgeSource(e);
+        }
+        Collections.reverse(ret);
+        return ret;
+    }
+
+    private void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            dist[touched[i]] = Double.POSITIVE_INFINITY;
+            estimate[touched[i]] = Double.NaN;
+            prev[touched[i]] = -1;
+            visited.clear(touched[i]);
+        }
+        touchedCount = 0;
+        settled = 0;
+        relaxed = 0;
+        Q.clear();
+    }
+}
@@ -1,3 +1,6 @@
+package maps;
+
+import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -39,7 +42,11 @@ public class Application {
                     break;
                 case '2': // Remove Settlement
                     System.out.print("Settlement to remove: ");
-                    map.removeSettlement(scan.nextLine());
+                    if (map.removeSettlement(scan.nextLine())) {
+                        System.out.println("Settlement successfully removed");
+                    } else {
+                        System.out.println("Settlement not found!");
+                    }
                     break;
                 case '3': // Add Road
                     askForRoad();
@@ -48,8 +55,10 @@ public class Application {
                     Road removalRoad = askForRoadToRemove();
                     if (removalRoad == null) {
                         System.err.println("2: Road not found.");
+                    } else if (map.removeRoad(removalRoad)) {
+                        System.out.println("Road successfully removed");
                     } else {
-                        map.removeRoad(removalRoad);
+                        System.out.println("Road not found!");
                     }
                     break;
                 case '5': // Display Map
@@ -164,7 +173,10 @@ public class Application {
             try {
                 System.out.print("Distance (Miles) : ");
                 dist = scan.nextDouble();
-                valid = true;
+                valid = Road.isValidLength(dist);
+                if (!valid) {
+                    System.out.println("The distance must be greater than 0, Try again!");
+                }
             } catch (InputMismatchException e ) {
                 System.out.println("Invalid input type, Try again!");
             }
@@ -213,6 +225,34 @@ public class Application {
 
     }
 
+    /**
+     * Answers every route query in a file and writes the answers to another.
+     *
+     * @param queryFile  The file of source:destination lines.
+     * @param resultFile The file to write the answers to.
+     */
+    private void runBatch(File queryFile, File resultFile) {
+        BatchRouter router = new BatchRouter(map);
+        long start = System.nanoTime();
+        try {
+            router.run(queryFile, resultFile);
+        } catch (IOException IO) {
+            System.out.println("IO Exception, " + IO.getMessage());
+        }
+        System.out.printf("%,d queries answered in %.1f s with %,d searches, %,d routes found.%n",
+                router.getQueryCount(), (System.nanoTime() - start) / 1e9, router.getSearchCount(),
+                router.getRoutedCount());
+    }
+
+    /**
+     * Finishes writing the journal. Every change has already been journalled as it was made, so the
+     * map doesn't have to be saved in full on the way out.
+     */
+    private void quit() {
+        map.close();
+        System.out.println("Changes saved.");
+    }
+
     /**
      * Prints the multiline menu to screen.
      */
@@ -275,11 +315,20 @@ public class Application {
 
     /* -------------------_Static Stuff_----------------------------- */
 
+    /**
+     * Runs the menu, or with --batch queries.txt results.txt answers every route query in the first
+     * file without the menu, see BatchRouter.
+     */
     public static void main(String args[]) throws IOException {
         Application app = new Application();
+        app.map.getMetrics().register("default");
         app.load();
-        app.runMenu();
-        app.save();
+        if (args.length >= 3 && args[0].equals("--batch")) {
+            app.runBatch(new File(args[1]), new File(args[2]));
+        } else {
+            app.runMenu();
+        }
+        app.quit();
     }
 
 }
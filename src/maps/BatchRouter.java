@@ -0,0 +1,165 @@
+package maps;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes a file of queries without any user input, for jobs too big for the menu. Each line of the
+ * query file is a source and a destination separated by ':', as in the other map files:
+ * <pre>
+ *   Aberystwyth:Bow Street
+ * </pre>
+ * and each line of the results file answers the query on the same line:
+ * <pre>
+ *   Aberystwyth:Bow Street:4.20:A487
+ *   source:destination:total miles:the roads taken, separated by ','
+ * </pre>
+ * with NO ROUTE or UNKNOWN SETTLEMENT in place of the miles when there is no answer.
+ * <p>
+ * The file is read in blocks of BLOCK_SIZE lines, so it can be far bigger than memory. The queries
+ * of a block are grouped by source and one Dijkstra's search answers every query in a group, as the
+ * search carries on from where it stopped for each destination. The groups are shared out across the
+ * cores, and each block is written out in the same order as the queries before the next is read.
+ * Every query is answered on the snapshot of the map taken when the job started.
+ */
+public class BatchRouter {
+
+    public static final int BLOCK_SIZE = 100000;
+
+    private Map map;
+    private AtomicLong queries = new AtomicLong();
+    private AtomicLong routed = new AtomicLong();
+    private AtomicLong searches = new AtomicLong();
+
+    /**
+     * Constructor for a router over a map.
+     *
+     * @param map The map to route on.
+     */
+    public BatchRouter(Map map) {
+        this.map = map;
+    }
+
+    /**
+     * Answers every query in a file.
+     *
+     * @param queryFile  The file of source:destination lines.
+     * @param resultFile The file to write the answers to, which is replaced.
+     * @throws IOException If either file can't be read or written.
+     */
+    public void run(File queryFile, File resultFile) throws IOException {
+        RoutingGraph graph = map.getRoutingGraph();
+        // Searches are reused from group to group for the whole run, and go with the pool when it
+        // ends rather than staying on the common pool's threads.
+        SearchPool<Dijkstras> groupSearches = new SearchPool<>(ForkJoinPool.getCommonPoolParallelism() + 1);
+        try (BufferedReader in = new BufferedReader(new FileReader(queryFile));
+             BufferedWriter out = new BufferedWriter(new FileWriter(resultFile))) {
+            ArrayList<String> block = new ArrayList<>(BLOCK_SIZE);
+            String line;
+            while ((line = in.readLine()) != null) {
+                block.add(line);
+                if (block.size() == BLOCK_SIZE) {
+                    writeBlock(route(graph, groupSearches, block), out);
+                    block.clear();
+                }
+            }
+            writeBlock(route(graph, groupSearches, block), out);
+        }
+    }
+
+    /**
+     * Answers one block of queries.
+     *
+     * @return Returns the answer to each query, in the same order.
+     */
+    private String[] route(RoutingGraph graph, SearchPool<Dijkstras> groupSearches, ArrayList<String> block) {
+        String[] results = new String[block.size()];
+        // The lines of the block which start at each source.
+        HashMap<String, ArrayList<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < block.size(); i++) {
+            String[] fields = block.get(i).split(":", -1);
+            if (fields.length != 2) {
+                results[i] = block.get(i) + ":INVALID QUERY:";
+            } else {
+                groups.computeIfAbsent(fields[0], k -> new ArrayList<>()).add(i);
+            }
+        }
+        groups.entrySet().parallelStream().forEach(group -> {
+            Settlement source = map.getSettlement(group.getKey());
+            Dijkstras search = null;
+            if (source != null && graph.getId(source) != -1) {
+                search = groupSearches.take();
+                if (search == null) {
+                    search = new Dijkstras(graph, source);
+                } else {
+                    search.reset(source);
+                }
+                searches.incrementAndGet();
+            }
+            for (int i : group.getValue()) {
+                String query = block.get(i);
+                Settlement dest = map.getSettlement(query.substring(query.indexOf(':') + 1));
+                if (search == null || dest == null || graph.getId(dest) == -1) {
+                    results[i] = query + ":UNKNOWN SETTLEMENT:";
+                    continue;
+                }
+                ArrayList<Road> route = search.shortestRoute(dest);
+                if (route == null) {
+                    results[i] = query + ":NO ROUTE:";
+                    continue;
+                }
+                StringBuilder result = new StringBuilder(query).append(':')
+                        .append(String.format("%.2f", search.getDistance(graph.getId(dest)))).append(':');
+                for (int r = 0; r < route.size(); r++) {
+                    if (r > 0) {
+                        result.append(',');
+                    }
+                    result.append(route.get(r).getName());
+                }
+                results[i] = result.toString();
+                routed.incrementAndGet();
+            }
+            if (search != null) {
+                groupSearches.give(search);
+            }
+        });
+        queries.addAndGet(block.size());
+        return results;
+    }
+
+    private static void writeBlock(String[] results, BufferedWriter out) throws IOException {
+        for (String result : results) {
+            out.write(result);
+            out.newLine();
+        }
+    }
+
+    /**
+     * @return Returns the number of queries answered so far.
+     */
+    public long getQueryCount() {
+        return queries.get();
+    }
+
+    /**
+     * @return Returns the number of queries which found a route.
+     */
+    public long getRoutedCount() {
+        return routed.get();
+    }
+
+    /**
+     * @return Returns the number of searches run, one for each source in each block.
+     */
+    public long getSearchCount() {
+        return searches.get();
+    }
+}
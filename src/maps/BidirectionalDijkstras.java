@@ -0,0 +1,206 @@
+package maps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+/**
+ * Point to point version of Dijkstra's algorithm which searches forwards from the source and
+ * backwards from the destination at the same time. As every road can be driven both ways the
+ * backward search uses the same graph. The search stops as soon as the smallest distances left
+ * in the two queues add up to at least the shortest route seen where the searches met, so
+ * usually far fewer settlements are settled than by a one sided search.
+ */
+public class BidirectionalDijkstras {
+
+    private RoutingGraph graph;
+    // Index 0 is the forward search from the source, index 1 the backward search from the destination.
+    private double[][] dist;
+    private int[][] prev;
+    private BitSet[] visited;
+    private IndexedMinHeap[] queues;
+    private int[][] touched;
+    private int[] touchedCount;
+    private int settled;
+    private int relaxed;
+
+    /**
+     * Constructor which allocates the search arrays for the graph. They are reused by every query.
+     *
+     * @param graph The routing graph to be operated on.
+     */
+    public BidirectionalDijkstras(RoutingGraph graph) {
+        this.graph = graph;
+        int n = graph.capacity();
+        dist = new double[2][n];
+        prev = new int[2][n];
+        visited = new BitSet[]{new BitSet(n), new BitSet(n)};
+        queues = new IndexedMinHeap[]{new IndexedMinHeap(n), new IndexedMinHeap(n)};
+        touched = new int[2][n];
+        touchedCount = new int[2];
+        for (int side = 0; side < 2; side++) {
+            Arrays.fill(dist[side], Double.POSITIVE_INFINITY);
+            Arrays.fill(prev[side], -1);
+        }
+    }
+
+    /**
+     * @return Returns the routing graph this search runs on.
+     */
+    RoutingGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Moves the search on to another routing graph, usually a later version of the one it was built
+     * for, so its arrays can be reused.
+     *
+     * @param newGraph The routing graph to search.
+     * @return Returns false, leaving the search as it was, if the graph has too many settlements for its arrays.
+     */
+    boolean useGraph(RoutingGraph newGraph) {
+        if (newGraph.size() > dist[0].length) {
+            return false;
+        }
+        graph = newGraph;
+        return true;
+    }
+
+    /**
+     * @return Returns the number of settlements settled by both searches during the last query.
+     */
+    public int getSettledCount() {
+        return settled;
+    }
+
+    /**
+     * @return Returns the number of roads looked along by both searches during the last query.
+     */
+    public int getRelaxedCount() {
+        return relaxed;
+    }
+
+    /**
+     * @return Returns the number of heap operations by both searches during the last query.
+     */
+    public int getHeapOperationCount() {
+        return queues[0].getOperationCount() + queues[1].getOperationCount();
+    }
+
+    /**
+     * Calculates the shortest route between the source and destination settlements.
+     *
+     * @param source The settlement to start from.
+     * @param dest   The destination settlement to be routed towards.
+     * @return An ArrayList of roads in the order of the route, or null if dest can't be reached.
+     */
+    public ArrayList<Road> shortestRoute(Settlement source, Settlement dest) {
+        return shortestRoute(source, dest, CostProfile.SHORTEST);
+    }
+
+    /**
+     * Calculates the route with the least cost by a cost profile between the source and destination
+     * settlements.
+     *
+     * @param source  The settlement to start from.
+     * @param dest    The destination settlement to be routed towards.
+     * @param profile What the route is to have the least of.
+     * @return An ArrayList of roads in the order of the route, or null if dest can't be reached.
+     */
+    public ArrayList<Road> shortestRoute(Settlement source, Settlement dest, CostProfile profile) {
+        double[] weights = graph.weights(profile);
+        int s = graph.getId(source);
+        int t = graph.getId(dest);
+        reset();
+        if (s == -1 || t == -1) {
+            return null;
+        }
+        start(0, s);
+        start(1, t);
+
+        // the best route found so far goes through meet and costs best
+        double best = s == t ? 0 : Double.POSITIVE_INFINITY;
+        int meet = s == t ? s : -1;
+        while (!queues[0].isEmpty() && !queues[1].isEmpty()) {
+            if (queues[0].minKey() + queues[1].minKey() >= best) {
+                break;
+            }
+            // grow whichever search has the smaller frontier
+            int side = queues[0].size() <= queues[1].size() ? 0 : 1;
+            int u = queues[side].poll();
+            visited[side].set(u);
+            settled++;
+            int end = graph.edgeEnd(u);
+            relaxed += end - graph.edgeStart(u);
+
+            for (int e = graph.edgeStart(u); e < end; e++) {
+                int v = graph.targets[e];
+                if (visited[side].get(v)) {
+                    continue;
+                }
+                double alt = dist[side][u] + weights[e];
+                if (alt < dist[side][v]) {
+                    if (dist[side][v] == Double.POSITIVE_INFINITY) {
+                        touched[side][touchedCount[side]++] = v;
+                    }
+                    dist[side][v] = alt;
+                    prev[side][v] = e;
+                    queues[side].insertOrDecrease(v, alt);
+                }
+                // the searches meet at v if the other side has reached it as well
+                double through = dist[side][v] + dist[1 - side][v];
+                if (through < best) {
+                    best = through;
+                    meet = v;
+                }
+            }
+        }
+        if (meet == -1) {
+            return null;
+        }
+        return grabRoute(s, t, meet);
+    }
+
+    /**
+     * Joins the forward route from the source to the meeting settlement with the backward route
+     * from the meeting settlement to the destination.
+     */
+    private ArrayList<Road> grabRoute(int s, int t, int meet) {
+        ArrayList<Road> ret = new ArrayList<>();
+        int v = meet;
+        while (v != s) {
+            int e = prev[0][v];
+            ret.add(graph.getRoad(e));
+            v = graph.edgeSource(e);
+        }
+        Collections.reverse(ret);
+        v = meet;
+        while (v != t) {
+            int e = prev[1][v];
+            ret.add(graph.getRoad(e));
+            v = graph.edgeSource(e);
+        }
+        return ret;
+    }
+
+    private void start(int side, int node) {
+        dist[side][node] = 0;
+        touched[side][touchedCount[side]++] = node;
+        queues[side].insertOrDecrease(node, 0);
+    }
+
+    private void reset() {
+        for (int side = 0; side < 2; side++) {
+            for (int i = 0; i < touchedCount[side]; i++) {
+                dist[side][touched[side][i]] = Double.POSITIVE_INFINITY;
+                prev[side][touched[side][i]] = -1;
+                visited[side].clear(touched[side][i]);
+            }
+            touchedCount[side] = 0;
+            queues[side].clear();
+        }
+        settled = 0;
+        relaxed = 0;
+    }
+}
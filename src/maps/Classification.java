@@ -1,3 +1,5 @@
+package maps;
+
 
 /**
  * The kinds of roads: A road, B road etc
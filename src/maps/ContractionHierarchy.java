@@ -0,0 +1,802 @@
+package maps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Contraction Hierarchies, for answering many route queries on a map which rarely changes.
+ * <p>
+ * Preprocessing removes ("contracts") the settlements one at a time, least important first. When a
+ * settlement is contracted, a shortcut is added between each pair of its neighbours whose shortest
+ * route went through it, unless a witness search finds another route which is no longer. The order
+ * is picked by the edge difference (shortcuts added minus roads removed) plus the number of
+ * neighbours already contracted and the depth of the settlement in the hierarchy. The edge
+ * difference counts twice, as it matters most for the number of shortcuts. Witness searches
+ * are cut short by the number of settlements they settle and of edges on their routes, so each
+ * contraction costs about the same however big the map is. Settlements are contracted in rounds of
+ * settlements which are not neighbours of each other, and the witness searches of a round and the
+ * updated priorities after it run in parallel.
+ * <p>
+ * A query is a bidirectional Dijkstra's algorithm which only follows roads and shortcuts to more
+ * important settlements, skipping settlements which a more important one shows aren't on a
+ * shortest route. Shortcuts are then unpacked back into the roads they stand for.
+ */
+public class ContractionHierarchy {
+
+    // A witness search gives up after settling this many settlements, and doesn't follow routes of
+    // more than this many edges, and the shortcut is added. The priorities are only estimates, so
+    // their searches are cut shorter.
+    private static final int CONTRACT_SETTLE_LIMIT = 500;
+    private static final int CONTRACT_HOP_LIMIT = 8;
+    private static final int PRIORITY_SETTLE_LIMIT = 50;
+    private static final int PRIORITY_HOP_LIMIT = 2;
+    // The priority of a settlement with more edges than this is only worked out again once a
+    // quarter of its neighbours have been contracted since the last time.
+    private static final int LAZY_DEGREE = 16;
+    private static final int LAZY_UPDATE_FRACTION = 4;
+
+    private RoutingGraph graph;
+    // rank[v] is the position of v in the contraction order, higher is more important.
+    private int[] rank;
+
+    // Edges are both the original roads and shortcuts, each joining edgeA and edgeB.
+    private int[] edgeA;
+    private int[] edgeB;
+    private double[] edgeWeight;
+    // For a shortcut, the two edges it replaces and the settlement between them; -1 for a road.
+    private int[] edgeChildA;
+    private int[] edgeChildB;
+    private int[] edgeMid;
+    // For a road, an edge of the routing graph for it; -1 for a shortcut.
+    private int[] edgeRoad;
+    private int edgeCount;
+
+    // The upward graph: edges from each settlement to more important ones, in CSR form.
+    private int[] upOffsets;
+    private int[] upTargets;
+    private double[] upWeights;
+    private int[] upEdges;
+
+    // Only used while building.
+    private IntList[] adjacency;
+    private boolean[] contracted;
+    private boolean[] inBatch;
+
+    // Searches not being used by a query, so a query can reuse the arrays of one.
+    private final SearchPool<Search> searches = new SearchPool<>(Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Builds the contraction hierarchy for a routing graph.
+     *
+     * @param graph The routing graph to preprocess.
+     */
+    public ContractionHierarchy(RoutingGraph graph) {
+        this.graph = graph;
+        int n = graph.size();
+        rank = new int[n];
+        int capacity = graph.getEdgeCount() / 2 + 16;
+        edgeA = new int[capacity];
+        edgeB = new int[capacity];
+        edgeWeight = new double[capacity];
+        edgeChildA = new int[capacity];
+        edgeChildB = new int[capacity];
+        edgeMid = new int[capacity];
+        edgeRoad = new int[capacity];
+        adjacency = new IntList[n];
+        contracted = new boolean[n];
+        inBatch = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            adjacency[v] = new IntList();
+        }
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                // each road is in the routing graph from both ends, only take it once
+                if (u < graph.targets[e]) {
+                    addEdge(u, graph.targets[e], graph.weights[e], -1, -1, -1, e);
+                }
+            }
+        }
+
+        contract();
+        buildUpwardGraph();
+        adjacency = null;
+        contracted = null;
+        inBatch = null;
+    }
+
+    /**
+     * @return Returns the routing graph this hierarchy was built from.
+     */
+    public RoutingGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return Returns the number of shortcuts added during preprocessing.
+     */
+    public int getShortcutCount() {
+        return edgeCount - graph.getEdgeCount() / 2;
+    }
+
+    /**
+     * @param v The id of a settlement.
+     * @return Returns the position of the settlement in the contraction order.
+     */
+    public int getRank(int v) {
+        return rank[v];
+    }
+
+    /**
+     * The route found by a query, along with the work the query did.
+     */
+    public static class Result {
+        // The roads of the route in order, or null if there is no route.
+        public final ArrayList<Road> route;
+        public final int settled;
+        // the number of upward edges looked along
+        public final int relaxed;
+        public final int heapOperations;
+
+        private Result(ArrayList<Road> route, int settled, int relaxed, int heapOperations) {
+            this.route = route;
+            this.settled = settled;
+            this.relaxed = relaxed;
+            this.heapOperations = heapOperations;
+        }
+    }
+
+    /**
+     * Calculates the shortest route between the source and destination settlements.
+     *
+     * @param source The settlement to start from.
+     * @param dest   The destination settlement to be routed towards.
+     * @return An ArrayList of roads in the order of the route, or null if dest can't be reached.
+     */
+    public ArrayList<Road> shortestRoute(Settlement source, Settlement dest) {
+        return query(source, dest).route;
+    }
+
+    /**
+     * Calculates the shortest route between the source and destination settlements, and counts the
+     * work done to find it.
+     *
+     * @param source The settlement to start from.
+     * @param dest   The destination settlement to be routed towards.
+     * @return Returns the route, null if dest can't be reached, and the counts of the query.
+     */
+    public Result query(Settlement source, Settlement dest) {
+        int s = graph.getId(source);
+        int t = graph.getId(dest);
+        if (s == -1 || t == -1) {
+            return new Result(null, 0, 0, 0);
+        }
+        Search search = take();
+        int meet = search.run(s, t);
+        Result ret = new Result(meet == -1 ? null : search.grabRoute(s, t, meet), search.settled, search.relaxed,
+                search.queues[0].getOperationCount() + search.queues[1].getOperationCount());
+        searches.give(search);
+        return ret;
+    }
+
+    /**
+     * Calculates the length of the shortest route between two settlements without unpacking it.
+     *
+     * @param source The settlement to start from.
+     * @param dest   The destination settlement.
+     * @return The length of the shortest route in miles, infinite if there isn't one.
+     */
+    public double distance(Settlement source, Settlement dest) {
+        int s = graph.getId(source);
+        int t = graph.getId(dest);
+        if (s == -1 || t == -1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        Search search = take();
+        int meet = search.run(s, t);
+        double ret = meet == -1 ? Double.POSITIVE_INFINITY : search.dist[0][meet] + search.dist[1][meet];
+        searches.give(search);
+        return ret;
+    }
+
+    private Search take() {
+        Search search = searches.take();
+        return search == null ? new Search() : search;
+    }
+
+    // ---------------------*** Preprocessing ***---------------------------
+
+    /**
+     * Contracts the settlements in rounds. Each round takes every settlement whose priority is lower
+     * than all of its neighbours', so no two of them are neighbours, and works out their shortcuts in
+     * parallel. The shortcuts are then added one settlement at a time in order of id, so the result
+     * doesn't depend on the number of threads, and the priorities of the neighbours are updated in
+     * parallel for the next round.
+     */
+    private void contract() {
+        int n = graph.size();
+        int[] deleted = new int[n];
+        int[] level = new int[n];
+        double[] priority = new double[n];
+        // Only as many witnesses as there are threads working at once, and they go with the pool once
+        // the hierarchy is built rather than staying on the common pool's threads.
+        SearchPool<Witness> witnesses = new SearchPool<>(ForkJoinPool.getCommonPoolParallelism() + 1);
+        IntStream.range(0, n).parallel().forEach(v -> {
+            Witness witness = takeWitness(witnesses, n);
+            priority[v] = priority(v, deleted, level, witness);
+            witnesses.give(witness);
+        });
+
+        int[] remaining = IntStream.range(0, n).toArray();
+        int remainingCount = n;
+        // Where the shortcuts worked out for each settlement in the round are: in owner[v]'s buffer
+        // from first[v] up to last[v].
+        Witness[] owner = new Witness[n];
+        int[] first = new int[n];
+        int[] last = new int[n];
+        // seen[u] == v while v's edges are taken out of u's list, so u only counts v as deleted once.
+        int[] seen = new int[n];
+        Arrays.fill(seen, -1);
+        // updated[u] == round once u is in the list of settlements whose priorities need working out again.
+        int[] updated = new int[n];
+        Arrays.fill(updated, -1);
+        int[] updates = new int[n];
+        // the number of neighbours of each settlement contracted since its priority was last worked out
+        int[] changed = new int[n];
+        int next = 0;
+        for (int round = 0; remainingCount > 0; round++) {
+            int[] candidates = remaining;
+            int[] batch = IntStream.range(0, remainingCount).parallel().map(i -> candidates[i])
+                    .filter(v -> isLocalMinimum(v, priority)).toArray();
+            for (int v : batch) {
+                inBatch[v] = true;
+            }
+            int thisRound = round;
+            Arrays.stream(batch).parallel().forEach(v -> {
+                Witness witness = takeWitness(witnesses, n);
+                witness.startRound(thisRound);
+                owner[v] = witness;
+                first[v] = witness.shortcutCount;
+                shortcuts(v, witness, CONTRACT_SETTLE_LIMIT, CONTRACT_HOP_LIMIT, true);
+                last[v] = witness.shortcutCount;
+                witnesses.give(witness);
+            });
+
+            int updateCount = 0;
+            for (int v : batch) {
+                Witness witness = owner[v];
+                for (int i = first[v]; i < last[v]; i++) {
+                    addShortcut(witness.shortcutA[i], witness.shortcutB[i], witness.shortcutWeight[i],
+                            witness.shortcutViaA[i], witness.shortcutViaB[i], v);
+                }
+                owner[v] = null;
+                inBatch[v] = false;
+                contracted[v] = true;
+                rank[v] = next++;
+                // Take v's edges out of its neighbours' lists so later searches don't have to skip them.
+                for (int i = 0; i < adjacency[v].size; i++) {
+                    int e = adjacency[v].get(i);
+                    int u = other(e, v);
+                    if (contracted[u]) {
+                        continue;
+                    }
+                    adjacency[u].remove(e);
+                    if (seen[u] != v) {
+                        seen[u] = v;
+                        deleted[u]++;
+                        changed[u]++;
+                        level[u] = Math.max(level[u], level[v] + 1);
+                    }
+                    if (updated[u] != round) {
+                        updated[u] = round;
+                        updates[updateCount++] = u;
+                    }
+                }
+            }
+
+            int kept = 0;
+            for (int i = 0; i < remainingCount; i++) {
+                if (!contracted[remaining[i]]) {
+                    remaining[kept++] = remaining[i];
+                }
+            }
+            remainingCount = kept;
+            IntStream.range(0, updateCount).parallel().forEach(i -> {
+                int u = updates[i];
+                // Working out the priority of a settlement with many neighbours is slow, and a
+                // hub loses neighbours in nearly every round, so its priority is only worked out
+                // again once enough of them have gone. Until then it goes up by one for each.
+                int degree = adjacency[u].size;
+                if (degree <= LAZY_DEGREE || changed[u] * LAZY_UPDATE_FRACTION >= degree) {
+                    changed[u] = 0;
+                    Witness witness = takeWitness(witnesses, n);
+                    priority[u] = priority(u, deleted, level, witness);
+                    witnesses.give(witness);
+                } else {
+                    priority[u] += changed[u];
+                    changed[u] = 0;
+                }
+            });
+        }
+    }
+
+    private Witness takeWitness(SearchPool<Witness> witnesses, int n) {
+        Witness witness = witnesses.take();
+        return witness == null ? new Witness(n) : witness;
+    }
+
+    /**
+     * @return Returns true if v's priority is lower than that of every neighbour still in the graph,
+     * the lower id winning a tie.
+     */
+    private boolean isLocalMinimum(int v, double[] priority) {
+        IntList edges = adjacency[v];
+        for (int i = 0; i < edges.size; i++) {
+            int u = other(edges.get(i), v);
+            if (priority[u] < priority[v] || (priority[u] == priority[v] && u < v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The edge difference of contracting v plus the number of its neighbours already contracted and
+     * its depth in the hierarchy so far, which keeps the contraction spread evenly over the map.
+     */
+    private double priority(int v, int[] deleted, int[] level, Witness witness) {
+        int degree = 0;
+        for (int i = 0; i < adjacency[v].size; i++) {
+            if (!contracted[other(adjacency[v].get(i), v)]) {
+                degree++;
+            }
+        }
+        int needed = shortcuts(v, witness, PRIORITY_SETTLE_LIMIT, PRIORITY_HOP_LIMIT, false);
+        return 2 * (needed - degree) + deleted[v] + level[v];
+    }
+
+    /**
+     * Works out the shortcuts needed to contract v, adding them to the witness's buffer if asked to.
+     * A shortcut is needed between two neighbours unless a witness search finds a route between them
+     * which is no longer and avoids v and every other settlement being contracted in the same round.
+     *
+     * @return Returns the number of shortcuts needed.
+     */
+    private int shortcuts(int v, Witness witness, int settleLimit, int hopLimit, boolean record) {
+        // The neighbours of v which are still in the graph, keeping the shortest edge to each.
+        IntList edges = adjacency[v];
+        witness.ensureNeighbourCapacity(edges.size);
+        int[] nodes = witness.nodes;
+        int[] via = witness.via;
+        double[] weights = witness.weights;
+        int count = 0;
+        for (int i = 0; i < edges.size; i++) {
+            int e = edges.get(i);
+            int u = other(e, v);
+            if (contracted[u]) {
+                continue;
+            }
+            int j = 0;
+            while (j < count && nodes[j] != u) {
+                j++;
+            }
+            if (j == count) {
+                nodes[count] = u;
+                weights[count] = edgeWeight[e];
+                via[count++] = e;
+            } else if (edgeWeight[e] < weights[j]) {
+                weights[j] = edgeWeight[e];
+                via[j] = e;
+            }
+        }
+
+        int needed = 0;
+        for (int i = 0; i < count - 1; i++) {
+            double limit = 0;
+            int mark = witness.nextMark();
+            for (int j = i + 1; j < count; j++) {
+                limit = Math.max(limit, weights[i] + weights[j]);
+                witness.target[nodes[j]] = mark;
+            }
+            witness.search(nodes[i], v, limit, settleLimit, hopLimit, mark, count - 1 - i);
+            for (int j = i + 1; j < count; j++) {
+                double through = weights[i] + weights[j];
+                if (witness.dist[nodes[j]] > through) {
+                    needed++;
+                    if (record) {
+                        witness.addShortcut(nodes[i], nodes[j], through, via[i], via[j]);
+                    }
+                }
+            }
+        }
+        return needed;
+    }
+
+    private void addShortcut(int u, int w, double weight, int childA, int childB, int mid) {
+        // Another settlement contracted in the same round may already have joined u and w. If that
+        // edge is no longer the shortcut isn't needed. A longer edge can never be part of a shortest
+        // route now, so it is dropped from the lists. It stays in the edge arrays as other shortcuts
+        // may unpack to it.
+        IntList edges = adjacency[u];
+        for (int i = 0; i < edges.size; i++) {
+            int e = edges.get(i);
+            if (other(e, u) == w) {
+                if (edgeWeight[e] <= weight) {
+                    return;
+                }
+                edges.remove(e);
+                adjacency[w].remove(e);
+                break;
+            }
+        }
+        addEdge(u, w, weight, childA, childB, mid, -1);
+    }
+
+    private void addEdge(int a, int b, double weight, int childA, int childB, int mid, int road) {
+        if (edgeCount == edgeA.length) {
+            int capacity = edgeCount * 2;
+            edgeA = Arrays.copyOf(edgeA, capacity);
+            edgeB = Arrays.copyOf(edgeB, capacity);
+            edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+            edgeChildA = Arrays.copyOf(edgeChildA, capacity);
+            edgeChildB = Arrays.copyOf(edgeChildB, capacity);
+            edgeMid = Arrays.copyOf(edgeMid, capacity);
+            edgeRoad = Arrays.copyOf(edgeRoad, capacity);
+        }
+        int e = edgeCount++;
+        edgeA[e] = a;
+        edgeB[e] = b;
+        edgeWeight[e] = weight;
+        edgeChildA[e] = childA;
+        edgeChildB[e] = childB;
+        edgeMid[e] = mid;
+        edgeRoad[e] = road;
+        adjacency[a].add(e);
+        adjacency[b].add(e);
+    }
+
+    private int other(int e, int v) {
+        return edgeA[e] == v ? edgeB[e] : edgeA[e];
+    }
+
+    private void buildUpwardGraph() {
+        int n = graph.size();
+        upOffsets = new int[n + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            upOffsets[lower(e) + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] += upOffsets[v];
+        }
+        upTargets = new int[edgeCount];
+        upWeights = new double[edgeCount];
+        upEdges = new int[edgeCount];
+        int[] next = Arrays.copyOf(upOffsets, n);
+        for (int e = 0; e < edgeCount; e++) {
+            int u = lower(e);
+            int i = next[u]++;
+            upTargets[i] = other(e, u);
+            upWeights[i] = edgeWeight[e];
+            upEdges[i] = e;
+        }
+    }
+
+    private int lower(int e) {
+        return rank[edgeA[e]] < rank[edgeB[e]] ? edgeA[e] : edgeB[e];
+    }
+
+    /**
+     * A growable list of ints, used for the edges of each settlement while building.
+     */
+    private static class IntList {
+        private int[] items = new int[4];
+        private int size;
+
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        void remove(int item) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == item) {
+                    items[i] = items[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The arrays for a witness search, used by one thread at a time, and the shortcuts found with it
+     * in the current round. A witness given back to the pool keeps its shortcuts until the next round.
+     */
+    private class Witness {
+        private double[] dist;
+        // the number of edges on the route found to each settlement
+        private int[] hops;
+        private int[] touched;
+        private int touchedCount;
+        private IndexedMinHeap queue;
+        // target[u] == mark while u is one of the settlements the current search is looking for
+        private int[] target;
+        private int mark;
+
+        // The neighbours of the settlement being contracted, reused by every call of shortcuts.
+        private int[] nodes = new int[16];
+        private int[] via = new int[16];
+        private double[] weights = new double[16];
+
+        // The shortcuts found in the current round.
+        private int round = -1;
+        private int[] shortcutA = new int[16];
+        private int[] shortcutB = new int[16];
+        private double[] shortcutWeight = new double[16];
+        private int[] shortcutViaA = new int[16];
+        private int[] shortcutViaB = new int[16];
+        private int shortcutCount;
+
+        Witness(int n) {
+            dist = new double[n];
+            hops = new int[n];
+            touched = new int[n];
+            target = new int[n];
+            queue = new IndexedMinHeap(n);
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        }
+
+        void ensureNeighbourCapacity(int size) {
+            if (nodes.length < size) {
+                nodes = new int[size];
+                via = new int[size];
+                weights = new double[size];
+            }
+        }
+
+        int nextMark() {
+            return ++mark;
+        }
+
+        /**
+         * Empties the buffer of shortcuts the first time the thread works in a new round.
+         */
+        void startRound(int newRound) {
+            if (round != newRound) {
+                round = newRound;
+                shortcutCount = 0;
+            }
+        }
+
+        void addShortcut(int a, int b, double weight, int viaA, int viaB) {
+            if (shortcutCount == shortcutA.length) {
+                int capacity = shortcutCount * 2;
+                shortcutA = Arrays.copyOf(shortcutA, capacity);
+                shortcutB = Arrays.copyOf(shortcutB, capacity);
+                shortcutWeight = Arrays.copyOf(shortcutWeight, capacity);
+                shortcutViaA = Arrays.copyOf(shortcutViaA, capacity);
+                shortcutViaB = Arrays.copyOf(shortcutViaB, capacity);
+            }
+            shortcutA[shortcutCount] = a;
+            shortcutB[shortcutCount] = b;
+            shortcutWeight[shortcutCount] = weight;
+            shortcutViaA[shortcutCount] = viaA;
+            shortcutViaB[shortcutCount++] = viaB;
+        }
+
+        /**
+         * Finds short routes from start without going through skip, a contracted settlement or one
+         * being contracted in this round. The search stops once every target is settled, past limit
+         * miles or after settling settleLimit settlements, and doesn't follow routes of more than
+         * hopLimit edges. Every distance found is the length of a real route, so it can only miss
+         * witnesses, which adds a shortcut that wasn't needed but never loses a shortest route.
+         */
+        void search(int start, int skip, double limit, int settleLimit, int hopLimit, int targetMark,
+                    int targets) {
+            for (int i = 0; i < touchedCount; i++) {
+                dist[touched[i]] = Double.POSITIVE_INFINITY;
+            }
+            touchedCount = 0;
+            queue.clear();
+            dist[start] = 0;
+            hops[start] = 0;
+            touched[touchedCount++] = start;
+            queue.insertOrDecrease(start, 0);
+            int settled = 0;
+            while (!queue.isEmpty() && queue.minKey() <= limit && settled < settleLimit) {
+                int u = queue.poll();
+                settled++;
+                if (target[u] == targetMark && --targets == 0) {
+                    break;
+                }
+                if (hops[u] == hopLimit) {
+                    continue;
+                }
+                IntList edges = adjacency[u];
+                for (int i = 0; i < edges.size; i++) {
+                    int e = edges.get(i);
+                    int w = other(e, u);
+                    if (w == skip || contracted[w] || inBatch[w]) {
+                        continue;
+                    }
+                    double alt = dist[u] + edgeWeight[e];
+                    if (alt < dist[w]) {
+                        if (dist[w] == Double.POSITIVE_INFINITY) {
+                            touched[touchedCount++] = w;
+                        }
+                        dist[w] = alt;
+                        hops[w] = hops[u] + 1;
+                        queue.insertOrDecrease(w, alt);
+                    }
+                }
+            }
+        }
+    }
+
+    // ---------------------*** Queries ***---------------------------
+
+    /**
+     * The arrays for the upward searches of a query, used by one query at a time.
+     */
+    private class Search {
+        // Index 0 is the search from the source, index 1 the search from the destination.
+        private double[][] dist;
+        private int[][] prev;
+        private IndexedMinHeap[] queues;
+        private int[][] touched;
+        private int[] touchedCount;
+        private int settled;
+        private int relaxed;
+
+        Search() {
+            int n = graph.size();
+            dist = new double[2][n];
+            prev = new int[2][n];
+            queues = new IndexedMinHeap[]{new IndexedMinHeap(n), new IndexedMinHeap(n)};
+            touched = new int[2][n];
+            touchedCount = new int[2];
+            for (int side = 0; side < 2; side++) {
+                Arrays.fill(dist[side], Double.POSITIVE_INFINITY);
+                Arrays.fill(prev[side], -1);
+            }
+        }
+
+        /**
+         * Runs both upward searches.
+         *
+         * @return Returns the most important settlement on the shortest route, or -1 if there is no route.
+         */
+        int run(int s, int t) {
+            reset();
+            start(0, s);
+            start(1, t);
+            double best = Double.POSITIVE_INFINITY;
+            int meet = -1;
+            while (true) {
+                // A side is finished once nothing left in its queue can beat the best route.
+                boolean forward = !queues[0].isEmpty() && queues[0].minKey() < best;
+                boolean backward = !queues[1].isEmpty() && queues[1].minKey() < best;
+                if (!forward && !backward) {
+                    break;
+                }
+                int side = forward && (!backward || queues[0].minKey() <= queues[1].minKey()) ? 0 : 1;
+                int u = queues[side].poll();
+                settled++;
+                relaxed += upOffsets[u + 1] - upOffsets[u];
+                if (dist[1 - side][u] != Double.POSITIVE_INFINITY && dist[0][u] + dist[1][u] < best) {
+                    best = dist[0][u] + dist[1][u];
+                    meet = u;
+                }
+                if (stalled(side, u)) {
+                    continue;
+                }
+                for (int i = upOffsets[u]; i < upOffsets[u + 1]; i++) {
+                    int v = upTargets[i];
+                    double alt = dist[side][u] + upWeights[i];
+                    if (alt < dist[side][v]) {
+                        if (dist[side][v] == Double.POSITIVE_INFINITY) {
+                            touched[side][touchedCount[side]++] = v;
+                        }
+                        dist[side][v] = alt;
+                        prev[side][v] = upEdges[i];
+                        queues[side].insertOrDecrease(v, alt);
+                    }
+                }
+            }
+            return meet;
+        }
+
+        /**
+         * Unpacks the route from the source up to the meeting settlement and back down to the destination.
+         */
+        ArrayList<Road> grabRoute(int s, int t, int meet) {
+            // the edges from the source to meet, in order
+            ArrayList<Integer> up = new ArrayList<>();
+            int v = meet;
+            while (v != s) {
+                up.add(prev[0][v]);
+                v = other(prev[0][v], v);
+            }
+            Collections.reverse(up);
+
+            ArrayList<Road> ret = new ArrayList<>();
+            v = s;
+            for (int e : up) {
+                unpack(e, v, ret);
+                v = other(e, v);
+            }
+            while (v != t) {
+                int e = prev[1][v];
+                unpack(e, v, ret);
+                v = other(e, v);
+            }
+            return ret;
+        }
+
+        /**
+         * Checks whether u can be reached more cheaply through a more important settlement already
+         * reached by this side. If so u's distance isn't the shortest and no shortest route goes up
+         * through it, so its edges needn't be followed ("stall on demand"). Roads can be driven both
+         * ways, so the edges down to u from above are u's own upward edges.
+         */
+        private boolean stalled(int side, int u) {
+            for (int i = upOffsets[u]; i < upOffsets[u + 1]; i++) {
+                if (dist[side][upTargets[i]] + upWeights[i] < dist[side][u]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void start(int side, int node) {
+            dist[side][node] = 0;
+            touched[side][touchedCount[side]++] = node;
+            queues[side].insertOrDecrease(node, 0);
+        }
+
+        private void reset() {
+            for (int side = 0; side < 2; side++) {
+                for (int i = 0; i < touchedCount[side]; i++) {
+                    dist[side][touched[side][i]] = Double.POSITIVE_INFINITY;
+                    prev[side][touched[side][i]] = -1;
+                }
+                touchedCount[side] = 0;
+                queues[side].clear();
+            }
+            settled = 0;
+            relaxed = 0;
+        }
+    }
+
+    /**
+     * Adds the roads an edge stands for to the route, travelling along it from the given settlement.
+     * Uses a stack rather than recursion as shortcuts can be nested very deeply.
+     */
+    private void unpack(int edge, int from, ArrayList<Road> route) {
+        IntList stack = new IntList();
+        stack.add(edge);
+        stack.add(from);
+        while (stack.size > 0) {
+            int f = stack.items[--stack.size];
+            int e = stack.items[--stack.size];
+            if (edgeRoad[e] != -1) {
+                route.add(graph.getRoad(edgeRoad[e]));
+                continue;
+            }
+            int first = edgeA[edgeChildA[e]] == f || edgeB[edgeChildA[e]] == f ? edgeChildA[e] : edgeChildB[e];
+            int second = first == edgeChildA[e] ? edgeChildB[e] : edgeChildA[e];
+            // pushed in reverse, so the first half of the shortcut is unpacked first
+            stack.add(second);
+            stack.add(edgeMid[e]);
+            stack.add(first);
+            stack.add(f);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package maps;
+
+import java.util.*;
+
+
+/**
+ * @author Josh Smith
+ * @version 3.0 (14th March 2016)
+ */
+public class Dijkstras {
+
+    private RoutingGraph graph;
+    private int source;
+    // what the routes found are shortest by
+    private CostProfile profile = CostProfile.SHORTEST;
+    // optimal distances from source
+    private double[] dist;
+    // the edge taken into each settlement on the routes from source, -1 if there isn't one.
+    private int[] prev;
+    // settlements whose shortest distance is final.
+    private BitSet visited;
+    // Q holds the settlements we have reached but not yet visited, ordered by distance.
+    private IndexedMinHeap Q;
+    // the settlements whose dist and prev have been written to, so a reset only has to undo those.
+    // Every visited settlement was reached first, so it is in here too.
+    private int[] touched;
+    private int touchedCount;
+    private int settled;
+    private int relaxed;
+
+    /**
+     * Constructor for the Dijkstras class. Takes the routing graph of the map, which is only rebuilt
+     * when the map has been changed.
+     *
+     * @param m      The Map to be operated on.
+     * @param source The Source settlement.
+     */
+    public Dijkstras(Map m, Settlement source) {
+        this(m.getRoutingGraph(), source);
+    }
+
+    /**
+     * Constructor for the Dijkstras class which works on an existing routing graph.
+     *
+     * @param graph  The routing graph to be operated on.
+     * @param source The Source settlement.
+     */
+    Dijkstras(RoutingGraph graph, Settlement source) {
+        this.graph = graph;
+        int n = graph.capacity();
+        dist = new double[n];
+        prev = new int[n];
+        visited = new BitSet(n);
+        Q = new IndexedMinHeap(n);
+        touched = new int[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(prev, -1);
+        reset(source);
+    }
+
+    /**
+     * @return Returns the routing graph this search runs on.
+     */
+    RoutingGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Moves the search on to another routing graph, usually a later version of the one it was built
+     * for, so its arrays can be reused. The search must be reset before it is used again.
+     *
+     * @param newGraph The routing graph to search.
+     * @return Returns false, leaving the search as it was, if the graph has too many settlements for its arrays.
+     */
+    boolean useGraph(RoutingGraph newGraph) {
+        if (newGraph.size() > dist.length) {
+            return false;
+        }
+        graph = newGraph;
+        return true;
+    }
+
+    /**
+     * @return Returns the id of the source settlement, -1 if it isn't on the graph.
+     */
+    int getSource() {
+        return source;
+    }
+
+    /**
+     * @return Returns the cost profile the search is finding the routes with the least cost of.
+     */
+    CostProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return Returns the number of settlements settled since the search was started from its source.
+     */
+    public int getSettledCount() {
+        return settled;
+    }
+
+    /**
+     * @return Returns the number of roads looked along since the search was started from its source.
+     */
+    public int getRelaxedCount() {
+        return relaxed;
+    }
+
+    /**
+     * @return Returns the number of heap operations since the search was started from its source.
+     */
+    public int getHeapOperationCount() {
+        return Q.getOperationCount();
+    }
+
+    /**
+     * Clears the previous search so the same arrays can be reused for a search from a new source,
+     * finding the shortest routes.
+     *
+     * @param newSource The new source settlement.
+     */
+    void reset(Settlement newSource) {
+        reset(newSource, CostProfile.SHORTEST);
+    }
+
+    /**
+     * Clears the previous search so the same arrays can be reused for a search from a new source,
+     * finding the routes with the least cost by the given profile.
+     *
+     * @param newSource  The new source settlement.
+     * @param newProfile What the routes are to have the least of.
+     */
+    void reset(Settlement newSource, CostProfile newProfile) {
+        profile = newProfile;
+        for (int i = 0; i < touchedCount; i++) {
+            dist[touched[i]] = Double.POSITIVE_INFINITY;
+            prev[touched[i]] = -1;
+            visited.clear(touched[i]);
+        }
+        touchedCount = 0;
+        settled = 0;
+        relaxed = 0;
+        Q.clear();
+        source = graph.getId(newSource);
+        if (source != -1) {
+            dist[source] = 0;
+            touched[touchedCount++] = source;
+            Q.insertOrDecrease(source, 0);
+        }
+    }
+
+    /**
+     * Calculates the shortest route betweeen the source Settlement and the passed destination
+     * Settlement. The search stops as soon as the destination is settled, and carries on from where
+     * it stopped if asked for another destination.
+     *
+     * @param dest The destination settlement to be routed towards.
+     * @return An ArrayList of roads in the order of the route, or null if dest can't be reached.
+     */
+    public ArrayList<Road> shortestRoute(Settlement dest) {
+        int d = graph.getId(dest);
+        if (source == -1 || d == -1) {
+            return null;
+        }
+        if (!visited.get(d)) {
+            settle(d, null, 1);
+        }
+        return graph.routeFromTree(prev, source, d);
+    }
+
+    /**
+     * Carries on the search until every settlement reachable from the source is settled.
+     */
+    void settleAll() {
+        settle(-1, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Runs a fresh search until all of the given settlements are settled, or there is nothing left to visit.
+     *
+     * @param targets The ids of the settlements to settle.
+     * @param count   The number of different settlements in targets.
+     */
+    void settleTargets(BitSet targets, int count) {
+        settle(-1, targets, count);
+    }
+
+    /**
+     * Settles the next closest settlement to the source, as long as it is no further than the limit.
+     * Calling this until it returns -1 visits the settlements within the limit in order of distance,
+     * and never looks beyond it.
+     *
+     * @param limit The furthest a settlement can be from the source, in the units of the cost profile.
+     * @return Returns the id of the settlement settled, or -1 if there are none left within the limit.
+     */
+    int settleNext(double limit) {
+        // Written so a limit of NaN settles nothing rather than everything.
+        if (source == -1 || Q.isEmpty() || !(Q.minKey() <= limit)) {
+            return -1;
+        }
+        int u = Q.poll();
+        visited.set(u);
+        settled++;
+        relax(u, graph.targets, graph.weights(profile));
+        return u;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm until enough of the settlements being looked for have been settled,
+     * or there is nothing left to visit.
+     *
+     * @param d         The id of a settlement to look for, or -1.
+     * @param targets   The ids of settlements to look for, or null.
+     * @param remaining The number of settlements still to be found.
+     */
+    private void settle(int d, BitSet targets, int remaining) {
+        // The arrays are read into locals so the loop below works on them directly.
+        int[] targetIds = graph.targets;
+        double[] weights = graph.weights(profile);
+
+        while (!Q.isEmpty() && remaining > 0) {
+            int u = Q.poll();
+            visited.set(u);
+            settled++;
+            if (u == d || (targets != null && targets.get(u))) {
+                remaining--;
+            }
+            relax(u, targetIds, weights);
+        }
+    }
+
+    /**
+     * Looks along every road from a settlement which has just been settled.
+     */
+    private void relax(int u, int[] targetIds, double[] weights) {
+        int end = graph.edgeEnd(u);
+        relaxed += end - graph.edgeStart(u);
+
+        for (int e = graph.edgeStart(u); e < end; e++) { // check each road connected to u
+            // get the settlement at the other end of road e, also known as v
+            int v = targetIds[e];
+            if (!visited.get(v)) { // if this road leads to a settlement we haven't been to.
+                double alt = dist[u] + weights[e];
+                // Check if this route to v is faster than the one we already know about
+                if (alt < dist[v]) {
+                    if (dist[v] == Double.POSITIVE_INFINITY) {
+                        touched[touchedCount++] = v;
+                    }
+                    dist[v] = alt;
+                    prev[v] = e;
+                    Q.insertOrDecrease(v, alt);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param id The id of a settlement in the routing graph.
+     * @return The shortest distance found so far from the source, in the units of the cost profile, infinite if it hasn't been reached.
+     */
+    double getDistance(int id) {
+        return dist[id];
+    }
+
+    /**
+     * @return Returns a copy of the shortest distances found so far, infinite where a settlement hasn't been reached.
+     */
+    double[] copyDistances() {
+        return dist.clone();
+    }
+
+    /**
+     * @return Returns a copy of the edge used to reach each settlement, -1 where there isn't one.
+     */
+    int[] copyTree() {
+        return prev.clone();
+    }
+}
@@ -0,0 +1,126 @@
+package maps;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The shortest distances from each of a list of source settlements to each of a list of target
+ * settlements. One Dijkstra's search is run per source, stopping once every target is settled, and
+ * the searches are shared out across the cores with the common fork/join pool.
+ */
+public class DistanceMatrix {
+
+    private RoutingGraph graph;
+    private ArrayList<Settlement> sources;
+    private ArrayList<Settlement> targets;
+    // distances[i * targets.size() + j] is the distance from source i to target j
+    private double[] distances;
+    // the shortest route tree of each source, only kept if asked for
+    private int[][] trees;
+
+    /**
+     * Works out the matrix of shortest distances.
+     *
+     * @param graph      The routing graph.
+     * @param sources    The settlements to route from.
+     * @param targets    The settlements to route to.
+     * @param keepRoutes True to keep each source's shortest route tree so getRoute doesn't search again.
+     *                   This costs one int per settlement on the map for every source.
+     */
+    public DistanceMatrix(RoutingGraph graph, List<Settlement> sources, List<Settlement> targets,
+                          boolean keepRoutes) {
+        this.graph = graph;
+        this.sources = new ArrayList<>(sources);
+        this.targets = new ArrayList<>(targets);
+        int columns = targets.size();
+        distances = new double[sources.size() * columns];
+        trees = keepRoutes ? new int[sources.size()][] : null;
+
+        int[] targetIds = new int[columns];
+        BitSet targetSet = new BitSet(graph.size());
+        for (int j = 0; j < columns; j++) {
+            targetIds[j] = graph.getId(targets.get(j));
+            if (targetIds[j] != -1) {
+                targetSet.set(targetIds[j]);
+            }
+        }
+        int targetCount = targetSet.cardinality();
+
+        // The searches are reused from source to source, and only live as long as this pool. A
+        // ThreadLocal would leave one on each worker thread of the common pool after the matrix is done.
+        SearchPool<Dijkstras> searches = new SearchPool<>(ForkJoinPool.getCommonPoolParallelism() + 1);
+        IntStream.range(0, sources.size()).parallel().forEach(i -> {
+            Settlement source = sources.get(i);
+            Dijkstras search = searches.take();
+            if (search == null) {
+                search = new Dijkstras(graph, source);
+            } else {
+                search.reset(source);
+            }
+            search.settleTargets(targetSet, targetCount);
+            for (int j = 0; j < columns; j++) {
+                distances[i * columns + j] = targetIds[j] == -1 ? Double.POSITIVE_INFINITY
+                        : search.getDistance(targetIds[j]);
+            }
+            if (trees != null) {
+                trees[i] = search.copyTree();
+            }
+            searches.give(search);
+        });
+    }
+
+    /**
+     * @return Returns the number of rows, one per source.
+     */
+    public int getSourceCount() {
+        return sources.size();
+    }
+
+    /**
+     * @return Returns the number of columns, one per target.
+     */
+    public int getTargetCount() {
+        return targets.size();
+    }
+
+    /**
+     * @param i The index of the source in the list of sources.
+     * @param j The index of the target in the list of targets.
+     * @return Returns the length of the shortest route in miles, infinite if there isn't one.
+     */
+    public double getDistance(int i, int j) {
+        return distances[i * targets.size() + j];
+    }
+
+    /**
+     * Gets all the distances in one array, a row per source. The array is not copied, as the
+     * matrix can be very large, so it must not be changed.
+     *
+     * @return Returns the distance matrix.
+     */
+    public double[] getDistances() {
+        return distances;
+    }
+
+    /**
+     * Finds the route behind one of the distances. If the routes weren't kept this runs a new search.
+     *
+     * @param i The index of the source in the list of sources.
+     * @param j The index of the target in the list of targets.
+     * @return Returns the roads of the route in order, or null if there is no route.
+     */
+    public ArrayList<Road> getRoute(int i, int j) {
+        int s = graph.getId(sources.get(i));
+        int t = graph.getId(targets.get(j));
+        if (s == -1 || t == -1) {
+            return null;
+        }
+        if (trees != null) {
+            return graph.routeFromTree(trees[i], s, t);
+        }
+        return new Dijkstras(graph, sources.get(i)).shortestRoute(targets.get(j));
+    }
+}
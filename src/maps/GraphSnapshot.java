@@ -0,0 +1,434 @@
+package maps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An immutable version of the settlements and roads on a map, as far as routing is concerned. A
+ * route query takes the current snapshot once and works on it for the whole query, so it never sees
+ * half of an edit and never needs a lock however many queries run at once.
+ * <p>
+ * Settlements and roads are held by their map ids in fixed size chunks. An edit copies only the
+ * table of chunks and the chunks it changes and shares every other chunk with the snapshot it was
+ * made from, so changing one road of a large map copies a few thousand references rather than the
+ * whole map. The routing graph for a snapshot is made from the graph of the snapshot before it by
+ * the writer which published it, writing out again only the rows of the settlements the edit
+ * touched. Queries never wait for this: until the graph is ready they use the newest graph there is.
+ */
+public final class GraphSnapshot {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * A snapshot of a map with nothing on it.
+     */
+    public static final GraphSnapshot EMPTY =
+            new GraphSnapshot(new SettlementState[0][], new RoadState[0][], 0, 0, 0, null, null, null);
+
+    /**
+     * A settlement as it was when the snapshot was taken.
+     */
+    public static final class SettlementState {
+        private final Settlement settlement;
+        private final double latitude;
+        private final double longitude;
+
+        private SettlementState(Settlement s) {
+            settlement = s;
+            latitude = s.getLatitude();
+            longitude = s.getLongitude();
+        }
+
+        public Settlement getSettlement() {
+            return settlement;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+    }
+
+    /**
+     * A road as it was when the snapshot was taken, with its ends given by settlement id.
+     */
+    public static final class RoadState {
+        private final Road road;
+        private final int source;
+        private final int destination;
+        private final double length;
+
+        private RoadState(Road r) {
+            road = r;
+            source = r.getSourceSettlement().getId();
+            destination = r.getDestinationSettlement().getId();
+            length = r.getLength();
+        }
+
+        public Road getRoad() {
+            return road;
+        }
+
+        public int getSource() {
+            return source;
+        }
+
+        public int getDestination() {
+            return destination;
+        }
+
+        public double getLength() {
+            return length;
+        }
+    }
+
+    private final SettlementState[][] settlements;
+    private final RoadState[][] roads;
+    private final int settlementCount;
+    private final int roadCount;
+    private final int version;
+    private final AtomicReference<RoutingGraph> graph = new AtomicReference<>();
+    // The snapshot this one was edited from and the ids the edit changed, kept until the graph is made.
+    // A snapshot without one has its graph built from scratch.
+    private volatile GraphSnapshot previous;
+    private int[] changedSettlements;
+    private int[] changedRoads;
+
+    private GraphSnapshot(SettlementState[][] settlements, RoadState[][] roads, int settlementCount, int roadCount,
+                          int version, GraphSnapshot previous, int[] changedSettlements, int[] changedRoads) {
+        this.settlements = settlements;
+        this.roads = roads;
+        this.settlementCount = settlementCount;
+        this.roadCount = roadCount;
+        this.version = version;
+        this.changedSettlements = changedSettlements;
+        this.changedRoads = changedRoads;
+        this.previous = previous;
+    }
+
+    /**
+     * @return Returns the number of settlements in the snapshot.
+     */
+    public int getSettlementCount() {
+        return settlementCount;
+    }
+
+    /**
+     * @return Returns the number of roads in the snapshot.
+     */
+    public int getRoadCount() {
+        return roadCount;
+    }
+
+    /**
+     * @return Returns the version of the map, which goes up by one with every edit published.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Returns one more than the largest settlement id the snapshot has room for.
+     */
+    public int getSettlementIdLimit() {
+        return settlements.length << CHUNK_BITS;
+    }
+
+    /**
+     * @return Returns one more than the largest road id the snapshot has room for.
+     */
+    public int getRoadIdLimit() {
+        return roads.length << CHUNK_BITS;
+    }
+
+    /**
+     * @param id The id of a settlement.
+     * @return Returns the settlement with that id as it was, or null if there wasn't one.
+     */
+    public SettlementState getSettlement(int id) {
+        int chunk = id >>> CHUNK_BITS;
+        return chunk < settlements.length && settlements[chunk] != null ? settlements[chunk][id & CHUNK_MASK] : null;
+    }
+
+    /**
+     * @param id The id of a road.
+     * @return Returns the road with that id as it was, or null if there wasn't one.
+     */
+    public RoadState getRoad(int id) {
+        int chunk = id >>> CHUNK_BITS;
+        return chunk < roads.length && roads[chunk] != null ? roads[chunk][id & CHUNK_MASK] : null;
+    }
+
+    /**
+     * Gets the routing graph of this snapshot, making it from the graphs of the snapshots before it if
+     * it hasn't been made yet. This is called by the writer which published the snapshot, so a query
+     * that follows an edit sees it; two writers making the same graph take turns.
+     *
+     * @return Returns the routing graph.
+     */
+    public RoutingGraph getRoutingGraph() {
+        RoutingGraph ret = graph.get();
+        if (ret != null) {
+            return ret;
+        }
+        // Find the newest snapshot with a graph, and make the graphs from there on in order.
+        ArrayList<GraphSnapshot> pending = new ArrayList<>();
+        GraphSnapshot s = this;
+        RoutingGraph base = null;
+        while (s != null) {
+            base = s.graph.get();
+            if (base != null) {
+                break;
+            }
+            pending.add(s);
+            s = s.previous;
+        }
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            base = pending.get(i).makeRoutingGraph(base);
+        }
+        return base;
+    }
+
+    private synchronized RoutingGraph makeRoutingGraph(RoutingGraph base) {
+        RoutingGraph ret = graph.get();
+        if (ret == null) {
+            boolean derived = base != null && previous != null && base.getVersion() == previous.version;
+            ret = derived ? base.next(this, changedSettlements, changedRoads) : new RoutingGraph(this);
+            graph.set(ret);
+            // The graph is published, so the older snapshots and the list of changes can go.
+            previous = null;
+            changedSettlements = null;
+            changedRoads = null;
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the newest routing graph without waiting for one to be made. This is the graph of this
+     * snapshot once its writer has made it, and until then the graph of the newest snapshot before it.
+     *
+     * @return Returns the routing graph.
+     */
+    public RoutingGraph getLatestRoutingGraph() {
+        GraphSnapshot s = this;
+        while (true) {
+            RoutingGraph ret = s.graph.get();
+            if (ret != null) {
+                return ret;
+            }
+            GraphSnapshot p = s.previous;
+            if (p == null) {
+                // Either the graph has just been made, or there is nothing to make it from.
+                ret = s.graph.get();
+                return ret != null ? ret : s.getRoutingGraph();
+            }
+            s = p;
+        }
+    }
+
+    /**
+     * @return Returns an editor which makes a new snapshot from this one.
+     */
+    public Editor edit() {
+        return new Editor(this);
+    }
+
+    /**
+     * Collects edits to a snapshot and makes them into a new snapshot. Each chunk is copied the first
+     * time it is changed and then changed in place, so a large batch of edits copies each chunk at
+     * most once. The snapshot being edited is never changed.
+     */
+    public static final class Editor {
+        private final GraphSnapshot base;
+        private SettlementState[][] settlements;
+        private RoadState[][] roads;
+        // Which chunks have been copied by this editor and can be changed in place.
+        private boolean[] ownSettlementChunks;
+        private boolean[] ownRoadChunks;
+        private int settlementCount;
+        private int roadCount;
+        // The ids changed by this editor, which may repeat, or null once it has cleared the snapshot.
+        private IdList changedSettlements = new IdList();
+        private IdList changedRoads = new IdList();
+
+        private Editor(GraphSnapshot base) {
+            this.base = base;
+            settlements = base.settlements.clone();
+            roads = base.roads.clone();
+            ownSettlementChunks = new boolean[settlements.length];
+            ownRoadChunks = new boolean[roads.length];
+            settlementCount = base.settlementCount;
+            roadCount = base.roadCount;
+        }
+
+        /**
+         * Adds a settlement, or updates it if it is already in the snapshot.
+         *
+         * @param s The settlement. Nothing is changed if it is no longer on a map.
+         * @return Returns this editor.
+         */
+        public Editor putSettlement(Settlement s) {
+            int id = s.getId();
+            if (id == -1) {
+                return this;
+            }
+            SettlementState[] chunk = settlementChunk(id);
+            if (chunk[id & CHUNK_MASK] == null) {
+                settlementCount++;
+            }
+            chunk[id & CHUNK_MASK] = new SettlementState(s);
+            changed(changedSettlements, id);
+            return this;
+        }
+
+        /**
+         * Removes a settlement.
+         *
+         * @param id The id the settlement had.
+         * @return Returns this editor.
+         */
+        public Editor removeSettlement(int id) {
+            if (id < 0) {
+                return this;
+            }
+            SettlementState[] chunk = settlementChunk(id);
+            if (chunk[id & CHUNK_MASK] != null) {
+                settlementCount--;
+                chunk[id & CHUNK_MASK] = null;
+                changed(changedSettlements, id);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a road, or updates it if it is already in the snapshot.
+         *
+         * @param r The road. Nothing is changed if it is no longer on a map.
+         * @return Returns this editor.
+         */
+        public Editor putRoad(Road r) {
+            int id = r.getId();
+            RoadState state = new RoadState(r);
+            if (id == -1 || state.source == -1 || state.destination == -1) {
+                return this;
+            }
+            RoadState[] chunk = roadChunk(id);
+            if (chunk[id & CHUNK_MASK] == null) {
+                roadCount++;
+            }
+            chunk[id & CHUNK_MASK] = state;
+            changed(changedRoads, id);
+            return this;
+        }
+
+        /**
+         * Removes a road.
+         *
+         * @param id The id the road had.
+         * @return Returns this editor.
+         */
+        public Editor removeRoad(int id) {
+            if (id < 0) {
+                return this;
+            }
+            RoadState[] chunk = roadChunk(id);
+            if (chunk[id & CHUNK_MASK] != null) {
+                roadCount--;
+                chunk[id & CHUNK_MASK] = null;
+                changed(changedRoads, id);
+            }
+            return this;
+        }
+
+        /**
+         * Removes every settlement and road.
+         *
+         * @return Returns this editor.
+         */
+        public Editor clear() {
+            settlements = new SettlementState[0][];
+            roads = new RoadState[0][];
+            ownSettlementChunks = new boolean[0];
+            ownRoadChunks = new boolean[0];
+            settlementCount = 0;
+            roadCount = 0;
+            changedSettlements = null;
+            changedRoads = null;
+            return this;
+        }
+
+        /**
+         * Makes the new snapshot. The editor must not be used afterwards, as the chunks it has copied
+         * now belong to the new snapshot.
+         *
+         * @return Returns the new snapshot, one version on from the snapshot being edited.
+         */
+        public GraphSnapshot publish() {
+            if (changedSettlements == null) {
+                return new GraphSnapshot(settlements, roads, settlementCount, roadCount, base.version + 1,
+                        null, null, null);
+            }
+            return new GraphSnapshot(settlements, roads, settlementCount, roadCount, base.version + 1,
+                    base, changedSettlements.toArray(), changedRoads.toArray());
+        }
+
+        private static void changed(IdList ids, int id) {
+            if (ids != null) {
+                ids.add(id);
+            }
+        }
+
+        private SettlementState[] settlementChunk(int id) {
+            int c = id >>> CHUNK_BITS;
+            if (c >= settlements.length) {
+                int length = Math.max(c + 1, settlements.length * 2);
+                settlements = Arrays.copyOf(settlements, length);
+                ownSettlementChunks = Arrays.copyOf(ownSettlementChunks, length);
+            }
+            if (!ownSettlementChunks[c]) {
+                settlements[c] = settlements[c] == null ? new SettlementState[CHUNK_SIZE] : settlements[c].clone();
+                ownSettlementChunks[c] = true;
+            }
+            return settlements[c];
+        }
+
+        private RoadState[] roadChunk(int id) {
+            int c = id >>> CHUNK_BITS;
+            if (c >= roads.length) {
+                int length = Math.max(c + 1, roads.length * 2);
+                roads = Arrays.copyOf(roads, length);
+                ownRoadChunks = Arrays.copyOf(ownRoadChunks, length);
+            }
+            if (!ownRoadChunks[c]) {
+                roads[c] = roads[c] == null ? new RoadState[CHUNK_SIZE] : roads[c].clone();
+                ownRoadChunks[c] = true;
+            }
+            return roads[c];
+        }
+    }
+
+    /**
+     * A growable list of ids, used for the ids changed by an editor.
+     */
+    private static final class IdList {
+        private int[] items = new int[8];
+        private int size;
+
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
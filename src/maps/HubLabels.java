@@ -0,0 +1,271 @@
+package maps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Hub labels for answering "how far is it from A to B" without searching the graph. Every settlement
+ * gets a label: a list of hub settlements with its distance to each. The labels are built so that
+ * any two settlements share a hub on a shortest route between them, so the distance is the smallest
+ * sum over the hubs their labels have in common, found by merging the two sorted labels.
+ * <p>
+ * The labels are built by pruned landmark labelling: settlements are taken in order of importance
+ * and a Dijkstra's search is run from each one, which stops at any settlement whose distance the
+ * labels built so far already give correctly. The order is the contraction order when one is
+ * available and the number of roads at each settlement otherwise.
+ */
+public class HubLabels {
+
+    // Two distances this close together are taken to be the same when following a route.
+    private static final double TOLERANCE = 1e-9;
+
+    private RoutingGraph graph;
+    // The label of settlement v is entries labelOffsets[v] to labelOffsets[v + 1] - 1. Hubs are stored
+    // by their position in the order, so each label is sorted.
+    private int[] labelOffsets;
+    private int[] labelHubs;
+    private double[] labelDists;
+
+    /**
+     * Builds hub labels taking the settlements with the most roads first.
+     *
+     * @param graph The routing graph.
+     */
+    public HubLabels(RoutingGraph graph) {
+        this(graph, degreeOrder(graph));
+    }
+
+    /**
+     * Builds hub labels from the contraction order of a contraction hierarchy, most important first.
+     *
+     * @param hierarchy A contraction hierarchy.
+     */
+    public HubLabels(ContractionHierarchy hierarchy) {
+        this(hierarchy.getGraph(), rankOrder(hierarchy));
+    }
+
+    /**
+     * Builds hub labels with pruned landmark labelling.
+     *
+     * @param graph The routing graph.
+     * @param order The ids of the settlements, most important first.
+     */
+    private HubLabels(RoutingGraph graph, int[] order) {
+        this.graph = graph;
+        int n = graph.size();
+        // Labels grow while building, so they are kept in per settlement arrays until the end.
+        int[][] hubs = new int[n][];
+        double[][] dists = new double[n][];
+        int[] sizes = new int[n];
+        for (int v = 0; v < n; v++) {
+            hubs[v] = new int[2];
+            dists[v] = new double[2];
+        }
+
+        double[] dist = new double[n];
+        int[] touched = new int[n];
+        IndexedMinHeap Q = new IndexedMinHeap(n);
+        // rootLabel[h] is the distance from the current root to hub h, taken from the root's label.
+        double[] rootLabel = new double[n];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(rootLabel, Double.POSITIVE_INFINITY);
+
+        for (int k = 0; k < n; k++) {
+            int root = order[k];
+            for (int i = 0; i < sizes[root]; i++) {
+                rootLabel[hubs[root][i]] = dists[root][i];
+            }
+            int touchedCount = 0;
+            dist[root] = 0;
+            touched[touchedCount++] = root;
+            Q.insertOrDecrease(root, 0);
+            while (!Q.isEmpty()) {
+                int u = Q.poll();
+                double d = dist[u];
+                // prune if the labels so far already give a route this short
+                boolean covered = false;
+                for (int i = 0; i < sizes[u] && !covered; i++) {
+                    covered = rootLabel[hubs[u][i]] + dists[u][i] <= d;
+                }
+                if (covered) {
+                    continue;
+                }
+                if (sizes[u] == hubs[u].length) {
+                    hubs[u] = Arrays.copyOf(hubs[u], sizes[u] * 2);
+                    dists[u] = Arrays.copyOf(dists[u], sizes[u] * 2);
+                }
+                hubs[u][sizes[u]] = k;
+                dists[u][sizes[u]++] = d;
+                for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                    int v = graph.targets[e];
+                    double alt = d + graph.weights[e];
+                    if (alt < dist[v]) {
+                        if (dist[v] == Double.POSITIVE_INFINITY) {
+                            touched[touchedCount++] = v;
+                        }
+                        dist[v] = alt;
+                        Q.insertOrDecrease(v, alt);
+                    }
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                dist[touched[i]] = Double.POSITIVE_INFINITY;
+            }
+            for (int i = 0; i < sizes[root]; i++) {
+                rootLabel[hubs[root][i]] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        // Flatten the labels into the final arrays.
+        labelOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            labelOffsets[v + 1] = labelOffsets[v] + sizes[v];
+        }
+        labelHubs = new int[labelOffsets[n]];
+        labelDists = new double[labelOffsets[n]];
+        for (int v = 0; v < n; v++) {
+            System.arraycopy(hubs[v], 0, labelHubs, labelOffsets[v], sizes[v]);
+            System.arraycopy(dists[v], 0, labelDists, labelOffsets[v], sizes[v]);
+            hubs[v] = null;
+            dists[v] = null;
+        }
+    }
+
+    private static int[] degreeOrder(RoutingGraph graph) {
+        Integer[] order = new Integer[graph.size()];
+        for (int v = 0; v < order.length; v++) {
+            order[v] = v;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(graph.edgeEnd(b) - graph.edgeStart(b),
+                graph.edgeEnd(a) - graph.edgeStart(a)));
+        int[] ret = new int[order.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = order[i];
+        }
+        return ret;
+    }
+
+    private static int[] rankOrder(ContractionHierarchy hierarchy) {
+        int n = hierarchy.getGraph().size();
+        int[] order = new int[n];
+        for (int v = 0; v < n; v++) {
+            order[n - 1 - hierarchy.getRank(v)] = v;
+        }
+        return order;
+    }
+
+    /**
+     * @return Returns the routing graph the labels were built from.
+     */
+    public RoutingGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return Returns the average number of hubs in a label.
+     */
+    public double getAverageLabelSize() {
+        return graph.size() == 0 ? 0 : (double) labelHubs.length / graph.size();
+    }
+
+    /**
+     * Finds the length of the shortest route between two settlements by merging their labels.
+     *
+     * @param source The settlement to start from.
+     * @param dest   The destination settlement.
+     * @return The length of the shortest route in miles, infinite if there isn't one.
+     */
+    public double distance(Settlement source, Settlement dest) {
+        int s = graph.getId(source);
+        int t = graph.getId(dest);
+        if (s == -1 || t == -1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return distance(s, t);
+    }
+
+    private double distance(int s, int t) {
+        double best = Double.POSITIVE_INFINITY;
+        int i = labelOffsets[s];
+        int j = labelOffsets[t];
+        int iEnd = labelOffsets[s + 1];
+        int jEnd = labelOffsets[t + 1];
+        while (i < iEnd && j < jEnd) {
+            if (labelHubs[i] == labelHubs[j]) {
+                best = Math.min(best, labelDists[i++] + labelDists[j++]);
+            } else if (labelHubs[i] < labelHubs[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the shortest route between two settlements. Rather than searching, the route is followed
+     * from the source by taking at each settlement a road whose length plus the distance left after it
+     * matches the distance left before it. If no road matches, which rounding could cause, the route
+     * is found with a Dijkstra's search from the source to the destination instead.
+     *
+     * @param source The settlement to start from.
+     * @param dest   The destination settlement to be routed towards.
+     * @return An ArrayList of roads in the order of the route, or null if dest can't be reached.
+     */
+    public ArrayList<Road> shortestRoute(Settlement source, Settlement dest) {
+        int u = graph.getId(source);
+        int t = graph.getId(dest);
+        if (u == -1 || t == -1) {
+            return null;
+        }
+        double left = distance(u, t);
+        if (left == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        ArrayList<Road> ret = new ArrayList<>();
+        // The settlements visited since the distance left last went down. Only roads of length 0 keep
+        // it the same, and a walk along them must not go round in a circle.
+        int[] level = new int[8];
+        int levelCount = 0;
+        level[levelCount++] = u;
+        double levelLeft = left;
+        while (u != t) {
+            int next = -1;
+            double nextLeft = 0;
+            for (int e = graph.edgeStart(u); e < graph.edgeEnd(u) && next == -1; e++) {
+                if (contains(level, levelCount, graph.targets[e])) {
+                    continue;
+                }
+                double after = distance(graph.targets[e], t);
+                if (graph.weights[e] + after <= left + TOLERANCE * Math.max(1, left)) {
+                    next = e;
+                    nextLeft = after;
+                }
+            }
+            if (next == -1) {
+                return new Dijkstras(graph, source).shortestRoute(dest);
+            }
+            ret.add(graph.getRoad(next));
+            u = graph.targets[next];
+            left = nextLeft;
+            if (left < levelLeft - TOLERANCE * Math.max(1, levelLeft)) {
+                levelCount = 0;
+                levelLeft = left;
+            }
+            if (levelCount == level.length) {
+                level = Arrays.copyOf(level, levelCount * 2);
+            }
+            level[levelCount++] = u;
+        }
+        return ret;
+    }
+
+    private static boolean contains(int[] items, int count, int item) {
+        for (int i = 0; i < count; i++) {
+            if (items[i] == item) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
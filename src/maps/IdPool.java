@@ -0,0 +1,53 @@
+package maps;
+
+import java.util.Arrays;
+
+/**
+ * Hands out int ids for the settlements or roads on a map. Ids given back are handed out again
+ * before any new ones, so the ids in use stay close to 0..size-1 and can index plain arrays.
+ */
+public class IdPool {
+
+    // one more than the largest id handed out so far
+    private int limit;
+    // ids given back, used as a stack
+    private int[] free = new int[16];
+    private int freeCount;
+
+    /**
+     * @return Returns an id which isn't in use, reusing the last one given back if there is one.
+     */
+    public int acquire() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        return limit++;
+    }
+
+    /**
+     * Gives back an id which is no longer in use.
+     *
+     * @param id The id.
+     */
+    public void release(int id) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = id;
+    }
+
+    /**
+     * @return Returns one more than the largest id handed out, the length an array indexed by id needs.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Forgets every id, so they are handed out again from 0.
+     */
+    public void clear() {
+        limit = 0;
+        freeCount = 0;
+    }
+}
@@ -0,0 +1,102 @@
+package maps;
+
+import java.util.ArrayList;
+
+/**
+ * What happened in a bulk import: how many settlements and roads were added, and why each of the
+ * others was turned down.
+ */
+public class ImportReport {
+
+    /**
+     * The reasons a settlement or road can be turned down.
+     */
+    public enum Reason {
+        DUPLICATE_SETTLEMENT, DUPLICATE_ROAD, CONNECTING_ROAD_EXISTS, MISSING_SETTLEMENT, INVALID_LENGTH
+    }
+
+    /**
+     * A settlement or road which wasn't added.
+     */
+    public static class Rejection {
+        private final Reason reason;
+        private final String name;
+        private final int line;
+        private final String message;
+
+        Rejection(Reason reason, String name, int line, String message) {
+            this.reason = reason;
+            this.name = name;
+            this.line = line;
+            this.message = message;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        /**
+         * @return Returns the name of the settlement or road.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Returns the line of the file it was read from, 0 if it wasn't read from a file.
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String toString() {
+            return (line > 0 ? "line " + line + ": " : "") + message;
+        }
+    }
+
+    private int settlementsAdded;
+    private int roadsAdded;
+    private ArrayList<Rejection> rejections = new ArrayList<>();
+
+    void settlementAdded() {
+        settlementsAdded++;
+    }
+
+    void roadAdded() {
+        roadsAdded++;
+    }
+
+    void reject(Reason reason, String name, int line, String message) {
+        rejections.add(new Rejection(reason, name, line, message));
+    }
+
+    public int getSettlementsAdded() {
+        return settlementsAdded;
+    }
+
+    public int getRoadsAdded() {
+        return roadsAdded;
+    }
+
+    /**
+     * @return Returns everything which wasn't added, in the order it was given.
+     */
+    public ArrayList<Rejection> getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return Returns true if everything was added.
+     */
+    public boolean isClean() {
+        return rejections.isEmpty();
+    }
+
+    public String toString() {
+        return settlementsAdded + " settlements and " + roadsAdded + " roads added, " + rejections.size() + " rejected.";
+    }
+}
@@ -0,0 +1,169 @@
+package maps;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of the integers 0..capacity-1, each keyed by a double. Because the heap
+ * remembers where every item is stored it supports decrease-key in O(log n), which is what
+ * Dijkstra's algorithm needs.
+ */
+public class IndexedMinHeap {
+
+    private int[] heap;    // heap[i] is the item stored at slot i
+    private int[] pos;     // pos[item] is the slot of the item, or -1 if it isn't in the heap
+    private double[] keys; // keys[item] is the current key of the item
+    private int size;
+    // inserts, key changes and polls since the heap was last cleared
+    private int operations;
+
+    /**
+     * Constructor for an empty heap able to hold the items 0..capacity-1.
+     *
+     * @param capacity The number of distinct items the heap can hold.
+     */
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        pos = new int[capacity];
+        keys = new double[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    /**
+     * @return Returns true if there are no items in the heap.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return Returns the number of items in the heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param item The item to check.
+     * @return Returns true if the item is currently in the heap.
+     */
+    public boolean contains(int item) {
+        return pos[item] != -1;
+    }
+
+    /**
+     * Inserts the item with the given key, or lowers its key if it is already in the heap.
+     * A key which is not lower than the current one is ignored.
+     *
+     * @param item The item to insert or update.
+     * @param key  The new key of the item.
+     */
+    public void insertOrDecrease(int item, double key) {
+        operations++;
+        if (pos[item] == -1) {
+            keys[item] = key;
+            heap[size] = item;
+            pos[item] = size;
+            siftUp(size++);
+        } else if (key < keys[item]) {
+            keys[item] = key;
+            siftUp(pos[item]);
+        }
+    }
+
+    /**
+     * Inserts the item with the given key, or changes its key if it is already in the heap.
+     * Unlike insertOrDecrease the key is allowed to go up.
+     *
+     * @param item The item to insert or update.
+     * @param key  The new key of the item.
+     */
+    public void update(int item, double key) {
+        if (pos[item] == -1 || key < keys[item]) {
+            insertOrDecrease(item, key);
+        } else {
+            operations++;
+            keys[item] = key;
+            siftDown(pos[item]);
+        }
+    }
+
+    /**
+     * @return Returns the smallest key in the heap. Only valid if the heap isn't empty.
+     */
+    public double minKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Removes the item with the smallest key from the heap.
+     *
+     * @return Returns the removed item. Only valid if the heap isn't empty.
+     */
+    public int poll() {
+        operations++;
+        int min = heap[0];
+        pos[min] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            pos[heap[0]] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * Removes every item from the heap, only touching the slots that are in use.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            pos[heap[i]] = -1;
+        }
+        size = 0;
+        operations = 0;
+    }
+
+    /**
+     * @return Returns the number of inserts, key changes and polls since the heap was last cleared.
+     */
+    public int getOperationCount() {
+        return operations;
+    }
+
+    private void siftUp(int i) {
+        int item = heap[i];
+        double key = keys[item];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[heap[parent]] <= key) {
+                break;
+            }
+            heap[i] = heap[parent];
+            pos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = item;
+        pos[item] = i;
+    }
+
+    private void siftDown(int i) {
+        int item = heap[i];
+        double key = keys[item];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            if (key <= keys[heap[child]]) {
+                break;
+            }
+            heap[i] = heap[child];
+            pos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = item;
+        pos[item] = i;
+    }
+}
@@ -0,0 +1,126 @@
+package maps;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long requests take, so the slow ones can be seen as well as the average. Times are
+ * kept in buckets which are 1/SUB_BUCKETS of a power of two wide, so each time is recorded to
+ * within about 6% from a microsecond up to over an hour. Recording only adds one to a bucket, so
+ * any number of threads can record at once without locking and without allocating.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Enough powers of two for 2^32 microseconds.
+    private static final int BUCKETS = (32 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records how long one request took.
+     *
+     * @param nanos The time taken in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return Returns the number of requests recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return Returns the mean time taken in microseconds, 0 if nothing has been recorded.
+     */
+    public double getMeanMicros() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / 1000.0 / n;
+    }
+
+    /**
+     * @return Returns the longest time taken in microseconds.
+     */
+    public double getMaxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    /**
+     * Finds the time which the given fraction of requests took no longer than.
+     *
+     * @param fraction The fraction of requests, e.g. 0.99 for the 99th percentile.
+     * @return Returns the upper edge of the bucket that time falls in, or the longest time taken if
+     * that is less, in microseconds.
+     */
+    public long getPercentileMicros(double fraction) {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBound(i), (long) Math.ceil(getMaxMicros()));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * @return Returns the count, mean, median, 99th percentile and maximum in one line.
+     */
+    @Override
+    public String toString() {
+        return String.format("%,d requests, mean %.0f us, p50 %d us, p99 %d us, max %.0f us", getCount(),
+                getMeanMicros(), getPercentileMicros(0.5), getPercentileMicros(0.99), getMaxMicros());
+    }
+
+    /**
+     * Times below SUB_BUCKETS microseconds have a bucket each, and each power of two above that is
+     * split into SUB_BUCKETS buckets.
+     */
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int power = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (power - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (power - SUB_BITS + 1) * SUB_BUCKETS + sub);
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int power = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + sub + 1) << (power - SUB_BITS);
+    }
+}
@@ -0,0 +1,1584 @@
+package maps;
+
+import java.io.*;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @author Chris Loftus, Josh Smith
+ * @version 3.0 (14th March 2016)
+ */
+
+public class Map {
+
+    // Changes can be made from several threads. A change locks the stripes of the settlements it
+    // touches, so changes to different parts of the map can be made at the same time.
+    private static final int LOCK_STRIPES = 64;
+    private final ReentrantLock[] stripes;
+    // Guards the lists and the ids below, and is only ever held for a moment.
+    private final Object registryLock = new Object();
+    private ArrayList<Settlement> settlements;
+    private ArrayList<Road> roads;
+    // Indexes kept alongside the lists so lookups don't have to scan them. An import into an empty
+    // map replaces them with ones big enough for it, so they are read without a lock.
+    private volatile ConcurrentHashMap<String, Settlement> settlementsByName;
+    // roads by roadKey(name, source, dest)
+    private volatile ConcurrentHashMap<String, Road> roadsByKey;
+    // the road joining each pair of settlements, by pairKey(a, b) in either order
+    private volatile ConcurrentHashMap<String, Road> roadsBetween;
+    // Settlements and roads by id, with nulls where an id isn't in use.
+    private IdPool settlementIds;
+    private IdPool roadIds;
+    private ArrayList<Settlement> settlementsById;
+    private ArrayList<Road> roadsById;
+    // What route queries see of the map. Each change which affects routing publishes a new snapshot,
+    // so queries on other threads read this without a lock and never see half of a change.
+    private final AtomicReference<GraphSnapshot> snapshot;
+    // Searches not in use, so a route query can reuse the arrays of one, moved on to its graph.
+    private static final int IDLE_SEARCHES = Runtime.getRuntime().availableProcessors() * 2;
+    private final SearchPool<Dijkstras> searches = new SearchPool<>(IDLE_SEARCHES);
+    private final SearchPool<BidirectionalDijkstras> bidirectionalSearches = new SearchPool<>(IDLE_SEARCHES);
+    private final SearchPool<AStar> aStarSearches = new SearchPool<>(IDLE_SEARCHES);
+    private final SearchPool<AStar> altSearches = new SearchPool<>(IDLE_SEARCHES);
+    // The number of landmarks picked for ALT routing.
+    private static final int LANDMARK_COUNT = 8;
+    // Built from the routing graph of a snapshot, and replaced under a lock of their own when they are
+    // out of date, so a query needing one isn't held up while another is built.
+    private volatile Landmarks landmarks;
+    private volatile ContractionHierarchy contractionHierarchy;
+    private volatile HubLabels hubLabels;
+    private final Object landmarksLock = new Object();
+    private final Object contractionHierarchyLock = new Object();
+    private final Object hubLabelsLock = new Object();
+    // Set while hub labels are being built in the background for distance().
+    private final AtomicBoolean hubLabelsBuilding = new AtomicBoolean();
+    // Shortest path trees of recent sources, so more routes from the same place are only a walk up
+    // the tree. Off unless asked for, as most queries are quicker stopping at their destination.
+    private static final int ROUTE_CACHE_SIZE = 0;
+    private volatile ShortestPathTreeCache routeCache;
+    // What route queries, loads and saves have done.
+    private final RoutingMetrics metrics = new RoutingMetrics();
+    // Records each change as it is made, null until the map has been loaded or saved.
+    private MapJournal journal;
+    // The number of settlements settled by each thread's last route query, to compare the routing modes.
+    private final ThreadLocal<int[]> lastSettledCount = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * Default constructor, initialises lists.
+     */
+    public Map() {
+        settlements = new ArrayList<>();
+        roads = new ArrayList<>();
+        stripes = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        settlementsByName = new ConcurrentHashMap<>();
+        roadsByKey = new ConcurrentHashMap<>();
+        roadsBetween = new ConcurrentHashMap<>();
+        settlementIds = new IdPool();
+        roadIds = new IdPool();
+        settlementsById = new ArrayList<>();
+        roadsById = new ArrayList<>();
+        snapshot = new AtomicReference<>(GraphSnapshot.EMPTY);
+        routeCache = new ShortestPathTreeCache(ROUTE_CACHE_SIZE);
+    }
+
+    /**l
+     * In this version we display the result of calling toString on the command
+     * line. Future versions may display graphically
+     */
+    public void display() {
+        System.out.println(toString());
+    }
+
+    /**
+     * Adds a settlement to the Map.
+     *
+     * @param newSettlement The settlement to add.
+     * @throws IllegalArgumentException
+     * @return Returns true if the settlement is successfully added!
+     */
+    public boolean addSettlement(Settlement newSettlement) throws IllegalArgumentException {
+        int id = acquireSettlementId();
+        // Held until the addition is journalled, so a road to the new settlement can't be journalled first.
+        lock(id, id);
+        try {
+            if (settlementsByName.putIfAbsent(newSettlement.getName(), newSettlement) != null) {
+                releaseSettlementId(id);
+                System.err.println("ERROR: Settlement already exists on map.");
+                return false;
+            }
+            synchronized (registryLock) {
+                settlements.add(newSettlement);
+                settlementsById.set(id, newSettlement);
+                newSettlement.setMap(this, id);
+            }
+            publish(e -> e.putSettlement(newSettlement));
+            journalSettlementAdded(newSettlement);
+            return true;
+        } finally {
+            unlock(id, id);
+        }
+    }
+
+    /**
+     * Removes the first settlement with an identical name in the list of settlements.
+     *
+     * @param name The name of the settlement to remove.
+     * @return Returns true if the settlement was removed, false if there is none with that name.
+     */
+    public boolean removeSettlement(String name) {
+        // Removing a settlement changes the roads of all its neighbours, so everything is locked.
+        lockAll();
+        try {
+            Settlement s = settlementsByName.remove(name);
+            if (s == null) {
+                return false;
+            }
+            // The settlement tells the map which roads it has deleted.
+            s.deleteRoads();
+            int id = s.getId();
+            synchronized (registryLock) {
+                settlements.remove(s);
+                s.setMap(null, -1);
+            }
+            publish(e -> e.removeSettlement(id));
+            releaseSettlementId(id);
+            if (journal != null) {
+                journal.record("REMOVE_SETTLEMENT", name);
+            }
+            return true;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Adds a road to the map after performing various checks on the road e.g. Checks if there is an identical
+     * road in the system and also checks if there is already a road between the two settlements this new road connects.
+     * Only the two settlements are locked, so roads between other settlements can be added at the same time.
+     *
+     * @param nm The name of the road.
+     * @param classifier The classification of the road.
+     * @param source The source settlement of the road.
+     * @param dest The destination settlement of the road.
+     * @param dist The distance that the road spans in miles.
+     * @return Returns true if the road was successfully added!
+     * @throws IllegalArgumentException If the distance isn't a finite number greater than 0.
+     */
+    public boolean addRoad(String nm, Classification classifier, Settlement source, Settlement dest, double dist)
+            throws IllegalArgumentException {
+        Road.checkLength(dist);
+        if (source == null || dest == null) {
+            System.err.println("ERROR: Source or Destination settlement not found!");
+            return false;
+        }
+        int sourceId = source.getId();
+        int destId = dest.getId();
+        lock(sourceId, destId);
+        try {
+            // Either settlement may have been removed before the locks were taken.
+            if (sourceId == -1 || destId == -1 || source.getId() != sourceId || dest.getId() != destId
+                    || getSettlement(source.getName()) != source || getSettlement(dest.getName()) != dest) {
+                System.err.println("ERROR: Source or Destination settlement not found!");
+                return false;
+            }
+            // Checks that there isn't already a connecting road between these settlements.
+            if (connectingRoadExists(source, dest)) {
+                System.err.println("ERROR: Connecting road already exists.");
+                return false;
+            }
+            // check if we already have a road with these details.
+            if (findRoad(nm, source.getName(), dest.getName()) != null) {
+                System.err.println("ERROR: Road already exists on map.");
+                return false;
+            }
+            Road r = new Road(nm, classifier, source, dest, dist);
+            attach(r);
+            roadsByKey.put(roadKey(nm, source.getName(), dest.getName()), r);
+            roadsBetween.put(pairKey(source, dest), r);
+            publish(e -> e.putRoad(r));
+            if (journal != null) {
+                journal.record("ADD_ROAD", nm, classifier, dist, source.getName(), dest.getName());
+            }
+            return true;
+        } finally {
+            unlock(sourceId, destId);
+        }
+    }
+
+    /**
+     * Adds many settlements and roads at once. Unlike addSettlement and addRoad nothing is printed,
+     * anything which can't be added is listed in the report instead. The settlements are added
+     * first, so the roads can join them, and each settlement gets all of its new roads in one go.
+     * The whole map is locked while the import is made. If the map is journalled, what was added is
+     * journalled as one IMPORT record rather than item by item.
+     *
+     * @param newSettlements The settlements to add.
+     * @param newRoads       The roads to add.
+     * @return Returns a report of what was added and what wasn't.
+     */
+    public ImportReport bulkImport(Stream<Settlement> newSettlements, Stream<RoadRecord> newRoads) {
+        List<Settlement> settlementList = newSettlements.collect(Collectors.toList());
+        List<RoadRecord> roadList = newRoads.collect(Collectors.toList());
+        lockAll();
+        try {
+            return bulkImport(settlementList, roadList);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private ImportReport bulkImport(List<Settlement> settlementList, List<RoadRecord> roadList) {
+        ImportReport report = new ImportReport();
+        // Sized for the import, so loading a map doesn't rehash the indexes as they grow.
+        if (settlementsByName.isEmpty()) {
+            settlementsByName = new ConcurrentHashMap<>(settlementList.size());
+        }
+        if (roadsByKey.isEmpty()) {
+            roadsByKey = new ConcurrentHashMap<>(roadList.size());
+            roadsBetween = new ConcurrentHashMap<>(roadList.size());
+        }
+        ArrayList<Settlement> addedSettlements = new ArrayList<>(settlementList.size());
+        synchronized (registryLock) {
+            settlements.ensureCapacity(settlements.size() + settlementList.size());
+        }
+        for (Settlement s : settlementList) {
+            if (settlementsByName.putIfAbsent(s.getName(), s) != null) {
+                report.reject(ImportReport.Reason.DUPLICATE_SETTLEMENT, s.getName(), 0,
+                        "Settlement " + s.getName() + " already exists on map.");
+                continue;
+            }
+            int id = acquireSettlementId();
+            synchronized (registryLock) {
+                settlements.add(s);
+                settlementsById.set(id, s);
+                s.setMap(this, id);
+            }
+            addedSettlements.add(s);
+            report.settlementAdded();
+        }
+
+        ArrayList<Road> addedRoads = new ArrayList<>(roadList.size());
+        synchronized (registryLock) {
+            roads.ensureCapacity(roads.size() + roadList.size());
+        }
+        // The new roads of each settlement by settlement id, added to it at the end.
+        ArrayList<ArrayList<Road>> newRoadsById = new ArrayList<>(Collections.nCopies(getSettlementIdLimit(), null));
+        for (RoadRecord rr : roadList) {
+            Settlement source = settlementsByName.get(rr.getSource());
+            Settlement dest = settlementsByName.get(rr.getDestination());
+            if (!Road.isValidLength(rr.getLength())) {
+                report.reject(ImportReport.Reason.INVALID_LENGTH, rr.getName(), rr.getLine(),
+                        "Length must be a finite number greater than 0, not " + rr.getLength() + ".");
+            } else if (source == null || dest == null) {
+                report.reject(ImportReport.Reason.MISSING_SETTLEMENT, rr.getName(), rr.getLine(), "Settlement "
+                        + (source == null ? rr.getSource() : rr.getDestination()) + " not found.");
+            } else if (roadsBetween.containsKey(pairKey(source, dest))) {
+                report.reject(ImportReport.Reason.CONNECTING_ROAD_EXISTS, rr.getName(), rr.getLine(),
+                        "Connecting road already exists between " + source.getName() + " and " + dest.getName() + ".");
+            } else if (roadsByKey.containsKey(roadKey(rr.getName(), source.getName(), dest.getName()))) {
+                report.reject(ImportReport.Reason.DUPLICATE_ROAD, rr.getName(), rr.getLine(),
+                        "Road " + rr.getName() + " already exists on map.");
+            } else {
+                Road r = new Road(rr.getName(), rr.getClassification(), source, dest, rr.getLength(), false);
+                attach(r);
+                addedRoads.add(r);
+                roadsByKey.put(roadKey(r.getName(), source.getName(), dest.getName()), r);
+                roadsBetween.put(pairKey(source, dest), r);
+                newRoadOf(newRoadsById, source).add(r);
+                newRoadOf(newRoadsById, dest).add(r);
+                report.roadAdded();
+            }
+        }
+        for (int id = 0; id < newRoadsById.size(); id++) {
+            if (newRoadsById.get(id) != null) {
+                settlementsById.get(id).addRoads(newRoadsById.get(id));
+            }
+        }
+        // One new snapshot for the whole import, which copies each chunk it changes only once.
+        publish(e -> {
+            for (Settlement s : addedSettlements) {
+                e.putSettlement(s);
+            }
+            for (Road r : addedRoads) {
+                e.putRoad(r);
+            }
+        });
+        if (journal != null && !(addedSettlements.isEmpty() && addedRoads.isEmpty())) {
+            journal.recordImport(addedSettlements, addedRoads);
+        }
+        return report;
+    }
+
+    private static ArrayList<Road> newRoadOf(ArrayList<ArrayList<Road>> newRoadsById, Settlement s) {
+        ArrayList<Road> ret = newRoadsById.get(s.getId());
+        if (ret == null) {
+            ret = new ArrayList<>();
+            newRoadsById.set(s.getId(), ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Publishes a new snapshot with a change made to the latest one. If another thread publishes
+     * first the change is made again to its snapshot, so no change is lost. The change must read the
+     * settlements and roads as they are now, which is what the editor does.
+     */
+    private void publish(Consumer<GraphSnapshot.Editor> change) {
+        GraphSnapshot current;
+        GraphSnapshot next;
+        do {
+            current = snapshot.get();
+            GraphSnapshot.Editor editor = current.edit();
+            change.accept(editor);
+            next = editor.publish();
+        } while (!snapshot.compareAndSet(current, next));
+        // Queries carry on with the graph before this change until its graph is made, and a query
+        // made by this thread after the change returns sees it.
+        next.getRoutingGraph();
+    }
+
+    /**
+     * Takes a free settlement id, with room for it in settlementsById.
+     */
+    private int acquireSettlementId() {
+        synchronized (registryLock) {
+            int id = settlementIds.acquire();
+            if (id == settlementsById.size()) {
+                settlementsById.add(null);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Frees a settlement id once no snapshot published from now on can have a settlement with it.
+     */
+    private void releaseSettlementId(int id) {
+        synchronized (registryLock) {
+            settlementsById.set(id, null);
+            settlementIds.release(id);
+        }
+    }
+
+    /**
+     * Puts a road on this map with the next free id and adds it to the list of roads.
+     */
+    private void attach(Road r) {
+        synchronized (registryLock) {
+            int id = roadIds.acquire();
+            if (id == roadsById.size()) {
+                roadsById.add(r);
+            } else {
+                roadsById.set(id, r);
+            }
+            roads.add(r);
+            r.setMap(this, id);
+        }
+    }
+
+    /**
+     * Takes roads off this map and out of the list of roads. Their ids are only freed once a snapshot
+     * without them has been published, so a new road can't be given an id the snapshot still uses.
+     */
+    private void detach(Collection<Road> removed) {
+        int[] ids = new int[removed.size()];
+        int count = 0;
+        synchronized (registryLock) {
+            // A set makes removeAll a single pass over the roads.
+            roads.removeAll(new HashSet<>(removed));
+            for (Road r : removed) {
+                // A road from a settlement back to itself is listed twice.
+                if (r.getId() != -1) {
+                    ids[count++] = r.getId();
+                    r.setMap(null, -1);
+                }
+            }
+        }
+        int[] freed = Arrays.copyOf(ids, count);
+        publish(e -> {
+            for (int id : freed) {
+                e.removeRoad(id);
+            }
+        });
+        synchronized (registryLock) {
+            for (int id : freed) {
+                roadsById.set(id, null);
+                roadIds.release(id);
+            }
+        }
+    }
+
+    private void journalSettlementAdded(Settlement s) {
+        if (journal != null) {
+            journal.record(MapJournal.settlementFields(s));
+        }
+    }
+
+    /**
+     * Locks the stripes of two settlement ids, in increasing order so that two threads locking
+     * the same stripes can't each wait for the other. An id of -1 locks nothing extra.
+     */
+    private void lock(int a, int b) {
+        int first = Math.min(stripe(a), stripe(b));
+        int second = Math.max(stripe(a), stripe(b));
+        stripes[first].lock();
+        if (second != first) {
+            stripes[second].lock();
+        }
+    }
+
+    private void unlock(int a, int b) {
+        int first = Math.min(stripe(a), stripe(b));
+        int second = Math.max(stripe(a), stripe(b));
+        if (second != first) {
+            stripes[second].unlock();
+        }
+        stripes[first].unlock();
+    }
+
+    private static int stripe(int id) {
+        return id & (LOCK_STRIPES - 1);
+    }
+
+    /**
+     * Locks every stripe, for changes which touch settlements all over the map.
+     */
+    void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    /**
+     * Totally removes a road from the map.
+     * @param r  The road to remove.
+     * @return Returns true if the road was removed, false if it isn't on the map.
+     */
+    public boolean removeRoad(Road r) {
+        int sourceId = r.getSourceSettlement().getId();
+        int destId = r.getDestinationSettlement().getId();
+        lock(sourceId, destId);
+        try {
+            if (r.getId() == -1) {
+                return false;
+            }
+            // Remove the road from both of the settlements it connects.
+            r.getSourceSettlement().removeRoad(r);
+            r.getDestinationSettlement().removeRoad(r);
+            // remove it from the map.
+            unindexRoad(r);
+            detach(Collections.singletonList(r));
+            if (journal != null) {
+                journal.record("REMOVE_ROAD", r.getName(), r.getSourceSettlement().getName(),
+                        r.getDestinationSettlement().getName());
+            }
+            return true;
+        } finally {
+            unlock(sourceId, destId);
+        }
+    }
+
+    /**
+     * Finds a road with details matching those provided and returns it.
+     *
+     * @param name   The name of the road to be found.
+     * @param source The name of the source destination of the road to be found.
+     * @param dest   The name of the destination destination of the road to be found.
+     * @return Returns a Road with identical values as those passed. or null if one is not found.
+     */
+    public Road findRoad(String name, String source, String dest) {
+        return roadsByKey.get(roadKey(name, source, dest));
+    }
+
+    /**
+     * Finds the fastest route between two settlements and returns the route as a list of roads in order A -> B.
+     *
+     * @param A The starting settlement.
+     * @param B The destination settlement.
+     * @return Returns a list of roads which make up the route found between A and B. If null, no route found.
+     */
+    public ArrayList<Road> findRoute(Settlement A, Settlement B) {
+        return findRoute(A, B, RoutingMode.DIJKSTRA);
+    }
+
+    /**
+     * Finds the fastest route between two settlements using the given routing mode.
+     *
+     * @param A    The starting settlement.
+     * @param B    The destination settlement.
+     * @param mode The algorithm used to find the route.
+     * @return Returns a list of roads which make up the route found between A and B. If null, no route found.
+     */
+    public ArrayList<Road> findRoute(Settlement A, Settlement B, RoutingMode mode) {
+        return findRoute(A, B, mode, CostProfile.SHORTEST);
+    }
+
+    /**
+     * Finds the route between two settlements with the least cost by a cost profile, such as the
+     * quickest route, using the given routing mode. Contraction hierarchies and hub labels are built
+     * for the shortest routes only, the other modes can use any profile.
+     *
+     * @param A       The starting settlement.
+     * @param B       The destination settlement.
+     * @param mode    The algorithm used to find the route.
+     * @param profile What the route is to have the least of.
+     * @return Returns a list of roads which make up the route found between A and B. If null, no route found.
+     * @throws IllegalArgumentException If the mode can't find routes by the profile.
+     */
+    public ArrayList<Road> findRoute(Settlement A, Settlement B, RoutingMode mode, CostProfile profile)
+            throws IllegalArgumentException {
+        if (profile != CostProfile.SHORTEST
+                && (mode == RoutingMode.CONTRACTION_HIERARCHY || mode == RoutingMode.HUB_LABELS)) {
+            throw new IllegalArgumentException(mode + " only finds " + CostProfile.SHORTEST + " routes");
+        }
+        long start = System.nanoTime();
+        RoutingGraph graph = getRoutingGraph();
+        ArrayList<Road> route;
+        // the work done by the query, for the metrics
+        int settled;
+        int relaxed = 0;
+        int heapOperations = 0;
+        switch (mode) {
+            case ASTAR:
+                AStar a = aStarSearches.take();
+                if (a == null || (a.getGraph() != graph && !a.useGraph(graph, null))) {
+                    a = new AStar(graph);
+                }
+                route = a.shortestRoute(A, B, profile);
+                settled = a.getSettledCount();
+                relaxed = a.getRelaxedCount();
+                heapOperations = a.getHeapOperationCount();
+                aStarSearches.give(a);
+                break;
+            case ALT:
+                Landmarks l = getLandmarks();
+                AStar alt = altSearches.take();
+                if (alt == null || (alt.getLandmarks() != l && !alt.useGraph(l.getGraph(), l))) {
+                    alt = new AStar(l.getGraph(), l);
+                }
+                route = alt.shortestRoute(A, B, profile);
+                settled = alt.getSettledCount();
+                relaxed = alt.getRelaxedCount();
+                heapOperations = alt.getHeapOperationCount();
+                altSearches.give(alt);
+                break;
+            case CONTRACTION_HIERARCHY:
+                ContractionHierarchy.Result found = getContractionHierarchy().query(A, B);
+                route = found.route;
+                settled = found.settled;
+                relaxed = found.relaxed;
+                heapOperations = found.heapOperations;
+                break;
+            case HUB_LABELS:
+                route = getHubLabels().shortestRoute(A, B);
+                settled = 0;
+                break;
+            case BIDIRECTIONAL:
+                BidirectionalDijkstras b = bidirectionalSearches.take();
+                if (b == null || (b.getGraph() != graph && !b.useGraph(graph))) {
+                    b = new BidirectionalDijkstras(graph);
+                }
+                route = b.shortestRoute(A, B, profile);
+                settled = b.getSettledCount();
+                relaxed = b.getRelaxedCount();
+                heapOperations = b.getHeapOperationCount();
+                bidirectionalSearches.give(b);
+                break;
+            default:
+                // The cached trees are of shortest routes.
+                ShortestPathTreeCache cache = routeCache;
+                boolean cached = cache.getCapacity() > 0 && profile == CostProfile.SHORTEST;
+                ShortestPathTree tree = cached ? cache.get(A, graph.getVersion()) : null;
+                if (tree != null) {
+                    route = tree.shortestRoute(B);
+                    settled = 0;
+                    break;
+                }
+                Dijkstras d = searches.take();
+                if (d == null || (d.getGraph() != graph && !d.useGraph(graph))) {
+                    d = new Dijkstras(graph, A);
+                }
+                if (cached) {
+                    // A source which has missed before gets a tree of every settlement, so it
+                    // answers any later destination.
+                    tree = cache.add(A, d);
+                }
+                if (tree != null) {
+                    route = tree.shortestRoute(B);
+                } else {
+                    d.reset(A, profile);
+                    route = d.shortestRoute(B);
+                }
+                settled = d.getSettledCount();
+                relaxed = d.getRelaxedCount();
+                heapOperations = d.getHeapOperationCount();
+                searches.give(d);
+                break;
+        }
+        lastSettledCount.get()[0] = settled;
+        metrics.recordQuery(mode, System.nanoTime() - start, settled, relaxed, heapOperations, route != null);
+        return route;
+    }
+
+    /**
+     * @return Returns the cache of shortest path trees used by Dijkstra's routing, with its statistics.
+     */
+    public ShortestPathTreeCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Changes how many shortest path trees Dijkstra's routing keeps. With no cache, which is the
+     * default, each query stops as soon as it reaches the destination, which is quicker when sources
+     * are rarely repeated. With a cache a source's tree is built the second time it misses.
+     *
+     * @param capacity The most trees to keep, 0 for no cache.
+     */
+    public void setRouteCacheSize(int capacity) {
+        routeCache = new ShortestPathTreeCache(capacity);
+    }
+
+    /**
+     * @return Returns the counts of what route queries, loads and saves have done, which can be
+     * made readable over JMX with RoutingMetrics.register.
+     */
+    public RoutingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return Returns the number of settlements the last route query made on this thread had to settle,
+     * so queries on other threads don't change it.
+     */
+    public int getLastSettledCount() {
+        return lastSettledCount.get()[0];
+    }
+
+    /**
+     * Finds the length of the shortest route from every source to every target, running one search
+     * per source in parallel rather than one per pair.
+     *
+     * @param sources The settlements to route from.
+     * @param targets The settlements to route to.
+     * @return Returns the matrix of distances.
+     */
+    public DistanceMatrix distanceMatrix(List<Settlement> sources, List<Settlement> targets) {
+        return distanceMatrix(sources, targets, false);
+    }
+
+    /**
+     * Finds the length of the shortest route from every source to every target, running one search
+     * per source in parallel rather than one per pair.
+     *
+     * @param sources    The settlements to route from.
+     * @param targets    The settlements to route to.
+     * @param keepRoutes True to keep what is needed to get each route from the matrix without searching again.
+     * @return Returns the matrix of distances.
+     */
+    public DistanceMatrix distanceMatrix(List<Settlement> sources, List<Settlement> targets, boolean keepRoutes) {
+        return new DistanceMatrix(getRoutingGraph(), sources, targets, keepRoutes);
+    }
+
+    /**
+     * Finds every settlement within a number of miles by road of a settlement. See
+     * reachableWithin(Settlement, double, CostProfile).
+     *
+     * @param source The settlement to start from.
+     * @param radius The furthest a settlement can be by road, in miles.
+     * @return Returns the settlements within the radius, nearest first, starting with the source.
+     */
+    public Stream<ReachableSettlement> reachableWithin(Settlement source, double radius) {
+        return reachableWithin(source, radius, CostProfile.SHORTEST);
+    }
+
+    /**
+     * Finds every settlement which can be reached from a settlement for no more than a cost, such as
+     * every settlement within half an hour. One Dijkstra's search is run from the source, and each
+     * settlement is only settled when the stream asks for it, so taking the first few or stopping
+     * part way costs no more than that. The search never looks at a settlement further than the
+     * radius. It works on the map as it was when this was called, even if it is changed while the
+     * stream is being read.
+     *
+     * @param source  The settlement to start from.
+     * @param radius  The most a route can cost, in the units of the profile.
+     * @param profile What the cost of a route is.
+     * @return Returns the settlements within the radius in order of cost, starting with the source.
+     * The stream is empty if the source isn't on the map.
+     * @throws IllegalArgumentException If the radius is negative, infinite or NaN.
+     */
+    public Stream<ReachableSettlement> reachableWithin(Settlement source, double radius, CostProfile profile)
+            throws IllegalArgumentException {
+        checkRadius(radius);
+        RoutingGraph graph = getRoutingGraph();
+        // The stream may be read after other queries on this thread, so it has a search of its own.
+        Dijkstras search = new Dijkstras(graph, source);
+        search.reset(source, profile);
+        Spliterator<ReachableSettlement> settlements = new Spliterators.AbstractSpliterator<ReachableSettlement>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super ReachableSettlement> action) {
+                int id = search.settleNext(radius);
+                if (id == -1) {
+                    return false;
+                }
+                action.accept(new ReachableSettlement(graph.getSettlement(id), search.getDistance(id)));
+                return true;
+            }
+        };
+        return StreamSupport.stream(settlements, false);
+    }
+
+    /**
+     * Finds the settlements within a number of miles by road of each of several settlements, such as
+     * the areas served by a set of depots. One bounded search is run per source, and the searches are
+     * shared out across the cores with the common fork/join pool.
+     *
+     * @param sources The settlements to start from.
+     * @param radius  The furthest a settlement can be by road, in miles.
+     * @return Returns a list for each source, in the same order, of the settlements within the radius
+     * of it nearest first. A source not on the map has an empty list.
+     */
+    public ArrayList<ArrayList<ReachableSettlement>> reachableWithin(List<Settlement> sources, double radius) {
+        return reachableWithin(sources, radius, CostProfile.SHORTEST);
+    }
+
+    /**
+     * Finds the settlements which can be reached from each of several settlements for no more than a
+     * cost. One bounded search is run per source, and the searches are shared out across the cores
+     * with the common fork/join pool.
+     *
+     * @param sources The settlements to start from.
+     * @param radius  The most a route can cost, in the units of the profile.
+     * @param profile What the cost of a route is.
+     * @return Returns a list for each source, in the same order, of the settlements within the radius
+     * of it in order of cost. A source not on the map has an empty list.
+     * @throws IllegalArgumentException If the radius is negative, infinite or NaN.
+     */
+    public ArrayList<ArrayList<ReachableSettlement>> reachableWithin(List<Settlement> sources, double radius,
+                                                                     CostProfile profile)
+            throws IllegalArgumentException {
+        checkRadius(radius);
+        RoutingGraph graph = getRoutingGraph();
+        ArrayList<ArrayList<ReachableSettlement>> ret = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            ret.add(new ArrayList<>());
+        }
+        // The searches are reused from source to source and only live as long as this call, like the
+        // searches of a DistanceMatrix.
+        SearchPool<Dijkstras> sourceSearches = new SearchPool<>(ForkJoinPool.getCommonPoolParallelism() + 1);
+        IntStream.range(0, sources.size()).parallel().forEach(i -> {
+            Settlement source = sources.get(i);
+            Dijkstras search = sourceSearches.take();
+            if (search == null) {
+                search = new Dijkstras(graph, source);
+            }
+            search.reset(source, profile);
+            ArrayList<ReachableSettlement> reached = ret.get(i);
+            for (int id = search.settleNext(radius); id != -1; id = search.settleNext(radius)) {
+                reached.add(new ReachableSettlement(graph.getSettlement(id), search.getDistance(id)));
+            }
+            sourceSearches.give(search);
+        });
+        return ret;
+    }
+
+    /**
+     * A search bounded by an infinite radius would visit the whole map, and one bounded by NaN has
+     * no meaning, so only finite radii of 0 or more are allowed.
+     */
+    private static void checkRadius(double radius) throws IllegalArgumentException {
+        if (!Double.isFinite(radius) || radius < 0) {
+            throw new IllegalArgumentException("Radius must be a finite number no less than 0, not " + radius);
+        }
+    }
+
+    /**
+     * Gets the current snapshot of the map. It never changes, so a query can use it from start to
+     * finish while the map is being changed on another thread.
+     *
+     * @return Returns the latest snapshot.
+     */
+    public GraphSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Gets the routing graph for the current state of the map. The graph of each snapshot is made
+     * from the one before by the change which published it, so a query never waits for it. A query on
+     * another thread made while a change is being published may get the graph from before the change.
+     *
+     * @return Returns an up to date routing graph.
+     */
+    public RoutingGraph getRoutingGraph() {
+        return snapshot.get().getLatestRoutingGraph();
+    }
+
+    /**
+     * Gets the landmarks for ALT routing on the current state of the map. When the map has changed the
+     * distances are worked out again for the same landmarks, new ones are only picked the first time.
+     *
+     * @return Returns up to date landmarks.
+     */
+    public Landmarks getLandmarks() {
+        Landmarks ret = landmarks;
+        if (ret != null && ret.getGraph() == getRoutingGraph()) {
+            return ret;
+        }
+        synchronized (landmarksLock) {
+            RoutingGraph graph = getRoutingGraph();
+            if (landmarks == null) {
+                landmarks = Landmarks.select(graph, LANDMARK_COUNT);
+            } else if (landmarks.getGraph() != graph) {
+                landmarks = Landmarks.compute(graph, stillOnMap(landmarks, graph));
+            }
+            return landmarks;
+        }
+    }
+
+    /**
+     * Gets the contraction hierarchy for the current state of the map, building it again if the map
+     * has changed. Building it takes far longer than a single query, so it is only worth it for maps
+     * which are queried many times between changes.
+     *
+     * @return Returns an up to date contraction hierarchy.
+     */
+    public ContractionHierarchy getContractionHierarchy() {
+        ContractionHierarchy ret = contractionHierarchy;
+        if (ret != null && ret.getGraph() == getRoutingGraph()) {
+            return ret;
+        }
+        synchronized (contractionHierarchyLock) {
+            RoutingGraph graph = getRoutingGraph();
+            if (contractionHierarchy == null || contractionHierarchy.getGraph() != graph) {
+                contractionHierarchy = new ContractionHierarchy(graph);
+            }
+            return contractionHierarchy;
+        }
+    }
+
+    /**
+     * Gets the hub labels for the current state of the map, building them again if the map has
+     * changed. If a contraction hierarchy is up to date its order is used to build the labels.
+     *
+     * @return Returns up to date hub labels.
+     */
+    public HubLabels getHubLabels() {
+        HubLabels ret = hubLabels;
+        if (ret != null && ret.getGraph() == getRoutingGraph()) {
+            return ret;
+        }
+        synchronized (hubLabelsLock) {
+            RoutingGraph graph = getRoutingGraph();
+            if (hubLabels == null || hubLabels.getGraph() != graph) {
+                ContractionHierarchy ch = contractionHierarchy;
+                if (ch != null && ch.getGraph() == graph) {
+                    hubLabels = new HubLabels(ch);
+                } else {
+                    hubLabels = new HubLabels(graph);
+                }
+            }
+            return hubLabels;
+        }
+    }
+
+    /**
+     * Finds the length of the shortest route between two settlements. This only looks up the hub
+     * labels, so it is much quicker than finding the route itself. Building the labels takes far
+     * longer than a query, so while they are out of date they are built again in the background and
+     * the route is found with a bidirectional search instead.
+     *
+     * @param A The starting settlement.
+     * @param B The destination settlement.
+     * @return Returns the length of the shortest route in miles, infinite if there is no route.
+     */
+    public double distance(Settlement A, Settlement B) {
+        HubLabels labels = hubLabels;
+        if (labels != null && labels.getGraph() == getRoutingGraph()) {
+            return labels.distance(A, B);
+        }
+        if (hubLabelsBuilding.compareAndSet(false, true)) {
+            ForkJoinPool.commonPool().execute(() -> {
+                try {
+                    getHubLabels();
+                } finally {
+                    hubLabelsBuilding.set(false);
+                }
+            });
+        }
+        ArrayList<Road> route = findRoute(A, B, RoutingMode.BIDIRECTIONAL);
+        if (route == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double miles = 0;
+        for (Road r : route) {
+            miles += r.getLength();
+        }
+        return miles;
+    }
+
+    /**
+     * Finds the ids in the new graph of the old landmarks which are still on the map.
+     */
+    private int[] stillOnMap(Landmarks old, RoutingGraph graph) {
+        int[] ids = old.getLandmarks();
+        int count = 0;
+        for (int id : ids) {
+            int newId = graph.getId(old.getGraph().getSettlement(id));
+            if (newId != -1) {
+                ids[count++] = newId;
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Called by a settlement on this map when it has deleted all of its roads, so they are taken off
+     * the map too.
+     *
+     * @param s       The settlement.
+     * @param deleted The roads the settlement had.
+     */
+    void roadsDeleted(Settlement s, ArrayList<Road> deleted) {
+        // The settlement has locked every stripe.
+        for (Road r : deleted) {
+            unindexRoad(r);
+        }
+        detach(deleted);
+        if (journal != null) {
+            journal.record("DELETE_ROADS", s.getName());
+        }
+    }
+
+    /**
+     * Called by a road on this map to change its name. The name is changed and the road re-indexed
+     * under the same locks, so it can always be found by one name or the other.
+     *
+     * @param r       The road.
+     * @param newName The name it is to have.
+     */
+    void renameRoad(Road r, String newName) {
+        int sourceId = r.getSourceSettlement().getId();
+        int destId = r.getDestinationSettlement().getId();
+        lock(sourceId, destId);
+        try {
+            String oldName = r.getName();
+            r.assignName(newName);
+            // The road may have been removed by another thread, and then there is nothing to re-index.
+            if (r.getId() == -1) {
+                return;
+            }
+            String source = r.getSourceSettlement().getName();
+            String dest = r.getDestinationSettlement().getName();
+            roadsByKey.remove(roadKey(oldName, source, dest));
+            roadsByKey.put(roadKey(r.getName(), source, dest), r);
+            if (journal != null) {
+                journal.record("RENAME_ROAD", oldName, source, dest, r.getName());
+            }
+        } finally {
+            unlock(sourceId, destId);
+        }
+    }
+
+    /**
+     * Called by a road on this map to change its length. The length is changed and a snapshot with
+     * it published under the same locks.
+     *
+     * @param r      The road.
+     * @param length The length it is to have.
+     */
+    void setRoadLength(Road r, double length) {
+        int sourceId = r.getSourceSettlement().getId();
+        int destId = r.getDestinationSettlement().getId();
+        lock(sourceId, destId);
+        try {
+            r.assignLength(length);
+            // The road may have been removed by another thread, and then there is nothing to publish.
+            if (r.getId() == -1) {
+                return;
+            }
+            publish(e -> e.putRoad(r));
+            if (journal != null) {
+                journal.record("LENGTH", r.getName(), r.getSourceSettlement().getName(),
+                        r.getDestinationSettlement().getName(), r.getLength());
+            }
+        } finally {
+            unlock(sourceId, destId);
+        }
+    }
+
+    /**
+     * Called by a settlement on this map to change its location. The location is changed and a
+     * snapshot with it published under the same lock.
+     *
+     * @param s   The settlement.
+     * @param lat The latitude in degrees.
+     * @param lon The longitude in degrees.
+     */
+    void moveSettlement(Settlement s, double lat, double lon) {
+        int id = s.getId();
+        lock(id, id);
+        try {
+            s.assignLocation(lat, lon);
+            if (s.getId() == -1) {
+                return;
+            }
+            publish(e -> e.putSettlement(s));
+            if (journal != null) {
+                journal.record("LOCATION", s.getName(), s.getLatitude(), s.getLongitude());
+            }
+        } finally {
+            unlock(id, id);
+        }
+    }
+
+    /**
+     * Called by a settlement on this map to change its population. It doesn't affect routing, so the
+     * change only has to be journalled, under the same lock.
+     *
+     * @param s          The settlement.
+     * @param population The population it is to have.
+     */
+    void setPopulation(Settlement s, int population) {
+        int id = s.getId();
+        lock(id, id);
+        try {
+            s.assignPopulation(population);
+            if (journal != null && s.getId() != -1) {
+                journal.record("POPULATION", s.getName(), s.getPopulation());
+            }
+        } finally {
+            unlock(id, id);
+        }
+    }
+
+    /**
+     * Called by a settlement on this map to change its kind. It doesn't affect routing, so the change
+     * only has to be journalled, under the same lock.
+     *
+     * @param s    The settlement.
+     * @param kind The kind it is to have.
+     */
+    void setKind(Settlement s, SettlementType kind) {
+        int id = s.getId();
+        lock(id, id);
+        try {
+            s.assignKind(kind);
+            if (journal != null && s.getId() != -1) {
+                journal.record("KIND", s.getName(), s.getKind());
+            }
+        } finally {
+            unlock(id, id);
+        }
+    }
+
+    /**
+     * Queries the user for data required to find the shortest route between two settlements
+     * and then prints the route to the screen using printRoute();
+     */
+    public void queryForRoute(Scanner scan) {
+        System.out.println("Please enter the information required to find your route.");
+        Settlement source = null;
+        Settlement dest = null;
+        boolean valid = false;
+        while (!valid) {
+            System.out.print("Source: ");
+            source = this.getSettlement(scan.nextLine());
+            if (source == null) {
+                System.err.println("ERROR: Settlement not found, try again!");
+            } else {
+                valid = true;
+            }
+        }
+        // Reset validity.
+        valid = false;
+        while (!valid) {
+            System.out.print("Destination: ");
+            dest = this.getSettlement(scan.nextLine());
+            if (dest == null) {
+                System.err.println("ERROR: Settlement not found, try again!");
+            } else {
+                valid = true;
+            }
+        }
+        // Gets map to find the shortest route and prints it to the user.
+        printRoute(this.findRoute(source, dest), source);
+    }
+
+
+
+    /**
+     * @return Returns all settlements. The list must not be changed directly, use addSettlement and
+     * removeSettlement so the map can keep its indexes up to date. It isn't safe to read while other
+     * threads change the map, getSnapshot is for that.
+     */
+    public ArrayList<Settlement> getSettlements() {
+        return settlements;
+    }
+
+
+    /**
+     * Takes a string and finds a matching settlement on the map and returns the object of said map.
+     *
+     * @param name The name of the settlement.
+     * @return The object of the found settlement.
+     */
+    public Settlement getSettlement(String name) {
+        return settlementsByName.get(name);
+    }
+
+    /**
+     * @return Returns all roads. The list must not be changed directly, use addRoad and removeRoad so
+     * the map can keep its indexes up to date. It isn't safe to read while other threads change the
+     * map, getSnapshot is for that.
+     */
+    public ArrayList<Road> getRoads() {
+        return roads;
+    }
+
+    /**
+     * Gets the roads of a settlement, safe to call while other threads change the map. Its list of
+     * roads is changed under its lock stripe, so it is copied under that lock.
+     *
+     * @param s The settlement.
+     * @return Returns a copy of the settlement's roads, empty if it isn't on the map.
+     */
+    public ArrayList<Road> getRoads(Settlement s) {
+        int id = s.getId();
+        if (id == -1) {
+            return new ArrayList<>();
+        }
+        lock(id, id);
+        try {
+            return s.getId() == id ? s.getAllRoads() : new ArrayList<>();
+        } finally {
+            unlock(id, id);
+        }
+    }
+
+    /**
+     * Finds the road joining two settlements, safe to call while other threads change the map.
+     *
+     * @param a One of the settlements.
+     * @param b The other settlement.
+     * @return Returns the road between them whichever way round it goes, or null if there isn't one.
+     */
+    public Road findRoad(Settlement a, Settlement b) {
+        return roadsBetween.get(pairKey(a, b));
+    }
+
+    /**
+     * Finds the settlement with the given id.
+     *
+     * @param id The id of the settlement.
+     * @return Returns the settlement, or null if no settlement on the map has that id.
+     */
+    public Settlement getSettlement(int id) {
+        synchronized (registryLock) {
+            return id >= 0 && id < settlementsById.size() ? settlementsById.get(id) : null;
+        }
+    }
+
+    /**
+     * Finds the road with the given id.
+     *
+     * @param id The id of the road.
+     * @return Returns the road, or null if no road on the map has that id.
+     */
+    public Road getRoad(int id) {
+        synchronized (registryLock) {
+            return id >= 0 && id < roadsById.size() ? roadsById.get(id) : null;
+        }
+    }
+
+    /**
+     * @return Returns one more than the largest settlement id in use, the length an array indexed by
+     * settlement id needs.
+     */
+    public int getSettlementIdLimit() {
+        synchronized (registryLock) {
+            return settlementIds.getLimit();
+        }
+    }
+
+    /**
+     * @return Returns one more than the largest road id in use, the length an array indexed by road
+     * id needs.
+     */
+    public int getRoadIdLimit() {
+        synchronized (registryLock) {
+            return roadIds.getLimit();
+        }
+    }
+
+    /**
+     * Loads the map based on a file format defined by the example provided.
+     *
+     * @throws IOException Throws IO exception if either file is not found.
+     */
+    public void load() throws IOException {
+        load(new File("."));
+    }
+
+    /**
+     * Loads the map from the files in a directory. If the binary snapshot there is followed by the
+     * journals written since it, it is loaded instead of the text files, as that is much quicker. Any
+     * changes journalled since are then replayed, and later changes are journalled in the same
+     * directory. The text files are written from the same copy of the map as the snapshot, so to
+     * load text files edited by hand the snapshot has to be deleted.
+     *
+     * @param directory The directory holding the map files.
+     * @throws IOException Throws IO exception if either file is not found.
+     */
+    public void load(File directory) throws IOException {
+        lockAll();
+        try {
+            long start = System.nanoTime();
+            long bytes = loadDirectory(directory);
+            metrics.recordLoad(System.nanoTime() - start, bytes);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * @return Returns the size of the files read.
+     */
+    private long loadDirectory(File directory) throws IOException {
+        // changes made while loading aren't journalled
+        close();
+        // reset the lists and their indexes
+        synchronized (registryLock) {
+            for (Settlement s : settlements) {
+                s.setMap(null, -1);
+            }
+            for (Road r : roads) {
+                r.setMap(null, -1);
+            }
+            settlementIds.clear();
+            roadIds.clear();
+            settlementsById.clear();
+            roadsById.clear();
+            settlements.clear();
+            roads.clear();
+        }
+        settlementsByName.clear();
+        roadsByKey.clear();
+        roadsBetween.clear();
+        publish(GraphSnapshot.Editor::clear);
+
+        File settlementFile = new File(directory, "settlements.txt");
+        File roadFile = new File(directory, "roads.txt");
+        File snapshotFile = new File(directory, MapSnapshot.FILE_NAME);
+        boolean loaded = false;
+        long bytes = 0;
+        // the last journal generation included in what has been loaded, none for the text files
+        long generation = 0;
+        // Compaction writes the snapshot before the text files and deletes the journals it includes
+        // last, so the snapshot is never older than the text files unless the journals straight after
+        // it have gone. File times aren't used, as a crash between writing the two text files would
+        // leave them newer than the snapshot but only half up to date.
+        long snapshotGeneration = -1;
+        if (snapshotFile.exists()) {
+            try {
+                snapshotGeneration = MapSnapshot.readGeneration(snapshotFile.getPath());
+            } catch (IOException e) {
+                System.err.println("Snapshot not loaded: " + e.getMessage());
+            }
+        }
+        ArrayList<Long> journals = MapJournal.generations(directory);
+        if (snapshotGeneration >= 0 && (journals.isEmpty() || journals.get(0) <= snapshotGeneration + 1)) {
+            try {
+                generation = MapSnapshot.read(snapshotFile.getPath(), this);
+                System.out.println("Map loaded from " + MapSnapshot.FILE_NAME + " successfully.");
+                loaded = true;
+                bytes += snapshotFile.length();
+            } catch (IOException e) {
+                // The snapshot is checked before anything is added, so the text files can still be loaded.
+                System.err.println("Snapshot not loaded: " + e.getMessage());
+            }
+        }
+        if (!loaded) {
+            loadText(settlementFile, roadFile);
+            bytes += settlementFile.length() + roadFile.length();
+        }
+        // ----------------------*** Journal ***----------------------------
+        for (long g : MapJournal.generations(directory)) {
+            if (g > generation) {
+                bytes += MapJournal.file(directory, g).length();
+            }
+        }
+        int entries = MapJournal.replay(directory, generation, this);
+        if (entries >= 0) {
+            ArrayList<Long> generations = MapJournal.generations(directory);
+            generation = generations.get(generations.size() - 1);
+            System.out.println("Journal replayed successfully.");
+        } else {
+            generation++;
+            entries = 0;
+        }
+        try {
+            journal = new MapJournal(this, directory, generation, entries);
+        } catch (IOException e) {
+            System.err.println("Changes won't be journalled: " + e.getMessage());
+        }
+        // ---------------------*** Landmarks ***---------------------------
+        landmarks = null;
+        File landmarkFile = new File(directory, Landmarks.FILE_NAME);
+        if (landmarkFile.exists()) {
+            try {
+                landmarks = Landmarks.load(landmarkFile.getPath(), getRoutingGraph());
+                bytes += landmarkFile.length();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Landmarks not loaded: " + e.getMessage());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Loads the settlements and roads from the text files.
+     */
+    private void loadText(File settlementFile, File roadFile) {
+        MapFileParser.Result<Settlement> parsedSettlements = new MapFileParser.Result<>();
+        MapFileParser.Result<RoadRecord> parsedRoads = new MapFileParser.Result<>();
+        // ---------------------*** Settlements ***---------------------------
+        try {
+            parsedSettlements = MapFileParser.readSettlements(settlementFile.getPath());
+            for (String error : parsedSettlements.errors) {
+                System.err.println("Settlement not added, " + error);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+        // ------------------------*** Roads ***-----------------------------
+        try {
+            // The file is parsed in parallel, but the roads are added in file order.
+            parsedRoads = MapFileParser.readRoads(roadFile.getPath());
+            for (String error : parsedRoads.errors) {
+                System.err.println("Road not added, " + error);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+        ImportReport report = bulkImport(parsedSettlements.items.stream(), parsedRoads.items.stream());
+        for (ImportReport.Rejection r : report.getRejections()) {
+            if (r.getReason() == ImportReport.Reason.DUPLICATE_SETTLEMENT) {
+                System.err.println("Settlement not added, " + r);
+            } else {
+                System.err.println("Road not added, " + roadFile.getName() + " " + r);
+            }
+        }
+        System.out.println("Settlements loaded successfully.");
+        System.out.println("Road loaded successfully.");
+    }
+
+
+    /**
+     * Saves the map data to settlements.txt and roads.txt.
+     *
+     * @throws IOException Can throw IO exception.
+     */
+    public void save() throws IOException {
+        save(new File("."));
+    }
+
+    /**
+     * Saves the map data to settlements.txt and roads.txt in a directory, along with a binary
+     * snapshot of the same map which is quicker to load. The journal is started again, and later
+     * changes are journalled in the same directory.
+     *
+     * @param directory The directory to write the map files to.
+     * @throws IOException Can throw IO exception.
+     */
+    public void save(File directory) throws IOException {
+        long start = System.nanoTime();
+        long bytes = 0;
+        // Nothing can change while the map is written, so what is saved is the map at one moment.
+        lockAll();
+        try {
+            if (journal == null || !journal.getDirectory().equals(directory)) {
+                close();
+                // Start after any journals already in the directory, so saving removes them.
+                ArrayList<Long> generations = MapJournal.generations(directory);
+                long generation = generations.isEmpty() ? 1 : generations.get(generations.size() - 1) + 1;
+                journal = new MapJournal(this, directory, generation, 0);
+            }
+            journal.compactNow();
+            bytes = new File(directory, "settlements.txt").length() + new File(directory, "roads.txt").length()
+                    + new File(directory, MapSnapshot.FILE_NAME).length();
+            System.out.println("Settlements saved successfully.");
+            System.out.println("Roads saved successfully.");
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        } finally {
+            unlockAll();
+        }
+
+        // Landmarks are only saved if they have been used, so they don't have to be worked out again.
+        if (landmarks != null) {
+            try {
+                File landmarkFile = new File(directory, Landmarks.FILE_NAME);
+                getLandmarks().save(landmarkFile.getPath());
+                bytes += landmarkFile.length();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        metrics.recordSave(System.nanoTime() - start, bytes);
+    }
+
+    /**
+     * Stops journalling changes, waiting for any background compaction to finish. Everything changed
+     * so far is already in the journal, so there is no need to save the whole map.
+     */
+    public void close() {
+        lockAll();
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Copies the map for writing out. The lists can't change while they are copied, but changes on
+     * other threads may carry on as soon as the copy is made.
+     *
+     * @return Returns the copy.
+     */
+    MapSnapshot capture() {
+        synchronized (registryLock) {
+            return MapSnapshot.capture(this);
+        }
+    }
+
+    /**
+     * Gets the multiline string to represent the Map.
+     * @return Returns a multiline string which contains the important information about the Map.
+     */
+    public String toString() {
+        String result = "";
+        if (settlements.size() > 0) {
+            result += "Map Settlements: \n";
+            for (Settlement s : settlements) {
+                result += s.toString();
+            }
+        } else {
+            result += "There are no settlements.";
+        }
+
+        if (roads.size() > 0) {
+            result += "\nMap Roads: \n";
+            for (Road r : roads) {
+                result += "Road Name=" + r.getName() +
+                        ", Classification=" + r.getClassification().toString() +
+                        ", length=" + r.getLength() +
+                        ", Source Settlement=" + r.getSourceSettlement().getName() +
+                        ", Destination Settlement=" + r.getDestinationSettlement().getName() + "\n";
+            }
+        }
+        else {
+            result += "There are no roads.";
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether a road already exists within the system
+     * @param s First settlement
+     * @param d Second settlement
+     * @return Returns true if there is already a road between s and d.
+     */
+    private boolean connectingRoadExists(Settlement s, Settlement d) {
+        return roadsBetween.containsKey(pairKey(s, d));
+    }
+
+    /**
+     * Takes a road out of the road indexes.
+     */
+    private void unindexRoad(Road r) {
+        Settlement source = r.getSourceSettlement();
+        Settlement dest = r.getDestinationSettlement();
+        roadsByKey.remove(roadKey(r.getName(), source.getName(), dest.getName()));
+        roadsBetween.remove(pairKey(source, dest));
+    }
+
+    /**
+     * The key of a road in roadsByKey. Names are joined the same way as in roads.txt, where they
+     * can't contain a colon.
+     */
+    private static String roadKey(String name, String source, String dest) {
+        return name + ":" + source + ":" + dest;
+    }
+
+    /**
+     * The key of a pair of settlements in roadsBetween, the same whichever way round they are given.
+     */
+    private static String pairKey(Settlement a, Settlement b) {
+        String first = a.getName();
+        String second = b.getName();
+        if (first.compareTo(second) > 0) {
+            first = b.getName();
+            second = a.getName();
+        }
+        return first + ":" + second;
+    }
+
+    /**
+     * Prints the route in a user friendly manner.
+     *
+     * @param route  The route which has been pre-calculated.
+     * @param source The source destination.
+     */
+    private void printRoute(ArrayList<Road> route, Settlement source) {
+        if (route == null) {
+            System.out.println("No route found from " + source.getName() + ".");
+            return;
+        }
+        Settlement next;
+        Settlement current = source;
+        double totalMiles = 0;
+        System.out.println("Starting at " + source.getName());
+        for (Road r : route) {
+            next = r.getAlternateSettlement(current);
+            System.out.println("Take the " + r.getName() + " for " + r.getLength() + " miles until you reach " +
+                    next.getName());
+            totalMiles += r.getLength();
+            current = next;
+        }
+        DecimalFormat decimal = new DecimalFormat("##.00");
+        System.out.println("The total mileage of the route is : " + decimal.format(totalMiles) + " miles.");
+    }
+
+
+}
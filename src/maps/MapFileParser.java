@@ -0,0 +1,437 @@
+package maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads settlements.txt and roads.txt without Scanner. The file is read into memory in one go and
+ * split into fields on ':' and line breaks by hand, and numbers are read straight from the bytes. Large files
+ * are cut into chunks at line breaks which are parsed in parallel, then put back in file order.
+ * <p>
+ * A malformed line doesn't stop the load, it is skipped and reported with its line number.
+ */
+public class MapFileParser {
+
+    // Files smaller than this are parsed as a single chunk, splitting them isn't worth it.
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+    // Text is decoded the same way PrintWriter and FileReader encode it in Map.save and the old Map.load.
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /**
+     * The lines read from a file, along with a message for each line which couldn't be read.
+     */
+    public static class Result<T> {
+        public final ArrayList<T> items = new ArrayList<>();
+        public final ArrayList<String> errors = new ArrayList<>();
+    }
+
+    /**
+     * Reads the lines of settlements.txt: name:population:type, optionally followed by :latitude:longitude.
+     *
+     * @param fileName The file to read.
+     * @return Returns the settlements, which haven't been added to a map yet.
+     * @throws IOException If the file can't be read or has no valid count on its first line.
+     */
+    public static Result<Settlement> readSettlements(String fileName) throws IOException {
+        return read(fileName, (fields, line) -> {
+            fields.require(3);
+            Settlement s = new Settlement(fields.string(0), fields.parseInt(1),
+                    fields.parseEnum(2, SettlementType.values()));
+            if (fields.count() >= 5) {
+                s.setLocation(fields.parseDouble(3), fields.parseDouble(4));
+            }
+            return s;
+        });
+    }
+
+    /**
+     * Reads the lines of roads.txt: name:classification:length:source:destination.
+     *
+     * @param fileName The file to read.
+     * @return Returns the roads, with the line each came from.
+     * @throws IOException If the file can't be read or has no valid count on its first line.
+     */
+    public static Result<RoadRecord> readRoads(String fileName) throws IOException {
+        return read(fileName, (fields, line) -> {
+            fields.require(5);
+            return new RoadRecord(fields.string(0), fields.parseEnum(1, Classification.values()),
+                    fields.parseDouble(2), fields.string(3), fields.string(4), line);
+        });
+    }
+
+    /**
+     * Reads the rows of the landmark table in landmarks.txt: a settlement name followed by its
+     * distance from each landmark. The rows follow some header lines, then a line holding the number
+     * of rows.
+     *
+     * @param fileName    The file to read.
+     * @param headerLines The number of lines before the one holding the number of rows.
+     * @param landmarks   The number of distances on each row.
+     * @return Returns the rows of the table.
+     * @throws IOException If the file can't be read or has no valid count after the header.
+     */
+    static Result<Landmarks.Row> readLandmarkRows(String fileName, int headerLines, int landmarks) throws IOException {
+        return read(fileName, headerLines, (fields, line) -> {
+            fields.require(landmarks + 1);
+            double[] distances = new double[landmarks];
+            for (int i = 0; i < landmarks; i++) {
+                distances[i] = fields.parseDouble(i + 1);
+            }
+            return new Landmarks.Row(fields.string(0), distances);
+        });
+    }
+
+    /**
+     * Turns the fields of one line into an item.
+     */
+    private interface LineParser<T> {
+        T parse(Fields fields, int line) throws MalformedLineException;
+    }
+
+    /**
+     * Thrown by Fields when a line doesn't hold what it should, caught for each line.
+     */
+    private static class MalformedLineException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MalformedLineException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * What one chunk of the file produced.
+     */
+    private static class Chunk<T> {
+        final ArrayList<T> items = new ArrayList<>();
+        final ArrayList<String> errors = new ArrayList<>();
+    }
+
+    private static <T> Result<T> read(String fileName, LineParser<T> parser) throws IOException {
+        return read(fileName, 0, parser);
+    }
+
+    private static <T> Result<T> read(String fileName, int headerLines, LineParser<T> parser) throws IOException {
+        ByteBuffer buf = readFully(fileName);
+        int size = buf.limit();
+
+        // The first line after the header holds the number of lines which follow.
+        int countStart = 0;
+        for (int i = 0; i < headerLines; i++) {
+            countStart = nextLine(buf, countStart, size);
+        }
+        int bodyStart = nextLine(buf, countStart, size);
+        Fields header = new Fields(buf);
+        header.split(countStart, lineEnd(buf, countStart, size));
+        int expected;
+        try {
+            expected = header.parseInt(0);
+        } catch (MalformedLineException e) {
+            throw new IOException(fileName + " line " + (headerLines + 1) + ": " + e.getMessage());
+        }
+
+        // Cut the rest of the file into chunks which each start at the beginning of a line.
+        int chunkCount = size - bodyStart < PARALLEL_THRESHOLD ? 1
+                : Math.max(1, Runtime.getRuntime().availableProcessors() * 4);
+        int[] starts = new int[chunkCount + 1];
+        starts[0] = bodyStart;
+        for (int c = 1; c < chunkCount; c++) {
+            int guess = Math.max(starts[c - 1], bodyStart + (int) ((long) (size - bodyStart) * c / chunkCount));
+            starts[c] = guess == bodyStart ? bodyStart : nextLine(buf, guess - 1, size);
+        }
+        starts[chunkCount] = size;
+
+        // Count the lines in each chunk first, so every chunk knows the line number it starts on.
+        int[] firstLines = new int[chunkCount];
+        IntStream.range(0, chunkCount).parallel().forEach(c ->
+                firstLines[c] = countLines(buf, starts[c], starts[c + 1]));
+        int line = headerLines + 2;
+        for (int c = 0; c < chunkCount; c++) {
+            int lines = firstLines[c];
+            firstLines[c] = line;
+            line += lines;
+        }
+
+        // An ordered stream keeps the chunks in file order however they are parsed.
+        List<Chunk<T>> chunks = IntStream.range(0, chunkCount).parallel()
+                .mapToObj(c -> parseChunk(fileName, buf, starts[c], starts[c + 1], firstLines[c], parser))
+                .collect(Collectors.toList());
+
+        // Put the chunks back together in order.
+        Result<T> result = new Result<>();
+        int found = 0;
+        for (Chunk<T> chunk : chunks) {
+            result.items.addAll(chunk.items);
+            result.errors.addAll(chunk.errors);
+            found += chunk.items.size() + chunk.errors.size();
+        }
+        if (found != expected) {
+            result.errors.add(fileName + ": the first line says there are " + expected + " lines but there are " + found + ".");
+        }
+        return result;
+    }
+
+    /**
+     * Reads a whole file into a buffer on the heap. The file isn't memory mapped because a mapping
+     * is only released when its buffer is garbage collected, and on Windows a file which is still
+     * mapped can't be replaced, so saving the map or compacting the journal over it would fail.
+     *
+     * @param fileName The file to read.
+     * @return Returns the contents of the file, positioned at its start.
+     * @throws IOException If the file can't be read or is too large for one buffer.
+     */
+    static ByteBuffer readFully(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(fileName + " is too large to read.");
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) channel.size());
+            while (buf.hasRemaining() && channel.read(buf) != -1) {
+                // read can return before the buffer is full
+            }
+            buf.flip();
+            return buf;
+        }
+    }
+
+    private static <T> Chunk<T> parseChunk(String fileName, ByteBuffer buf, int start, int end, int line,
+                                           LineParser<T> parser) {
+        Chunk<T> chunk = new Chunk<>();
+        Fields fields = new Fields(buf);
+        int pos = start;
+        while (pos < end) {
+            int lineEnd = lineEnd(buf, pos, end);
+            // blank lines are skipped, like the trailing newline at the end of the file
+            if (lineEnd > pos) {
+                fields.split(pos, lineEnd);
+                try {
+                    chunk.items.add(parser.parse(fields, line));
+                } catch (MalformedLineException e) {
+                    chunk.errors.add(fileName + " line " + line + ": " + e.getMessage());
+                }
+            }
+            line++;
+            pos = nextLine(buf, pos, end);
+        }
+        return chunk;
+    }
+
+    /**
+     * @return Returns the number of line breaks between start and end, counting "\r\n" as one.
+     */
+    private static int countLines(ByteBuffer buf, int start, int end) {
+        int lines = 0;
+        for (int pos = start; pos < end; pos++) {
+            byte b = buf.get(pos);
+            if (b == '\n') {
+                lines++;
+            } else if (b == '\r') {
+                lines++;
+                if (pos + 1 < end && buf.get(pos + 1) == '\n') {
+                    pos++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return Returns the position of the line break ending the line starting at pos, or end.
+     */
+    private static int lineEnd(ByteBuffer buf, int pos, int end) {
+        while (pos < end) {
+            byte b = buf.get(pos);
+            if (b == '\n' || b == '\r') {
+                return pos;
+            }
+            pos++;
+        }
+        return end;
+    }
+
+    /**
+     * @return Returns the position after the line break ending the line which pos is on, or end.
+     */
+    private static int nextLine(ByteBuffer buf, int pos, int end) {
+        pos = lineEnd(buf, pos, end);
+        if (pos < end && buf.get(pos) == '\r') {
+            pos++;
+        }
+        if (pos < end && buf.get(pos) == '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * The fields of one line, found by splitting on ':'. Only the positions are stored, the text of a
+     * field is only turned into a String when it is asked for as one.
+     */
+    private static class Fields {
+        private final ByteBuffer buf;
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private int count;
+        private byte[] scratch = new byte[64];
+
+        Fields(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        void split(int start, int end) {
+            count = 0;
+            int fieldStart = start;
+            for (int pos = start; pos <= end; pos++) {
+                if (pos == end || buf.get(pos) == ':') {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                        ends = Arrays.copyOf(ends, count * 2);
+                    }
+                    starts[count] = fieldStart;
+                    ends[count++] = pos;
+                    fieldStart = pos + 1;
+                }
+            }
+        }
+
+        int count() {
+            return count;
+        }
+
+        void require(int n) throws MalformedLineException {
+            if (count < n) {
+                throw new MalformedLineException("expected " + n + " fields separated by ':' but found " + count + ".");
+            }
+        }
+
+        String string(int i) {
+            int length = ends[i] - starts[i];
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            for (int j = 0; j < length; j++) {
+                scratch[j] = buf.get(starts[i] + j);
+            }
+            return new String(scratch, 0, length, CHARSET);
+        }
+
+        /**
+         * Reads a whole number, ignoring spaces around it.
+         */
+        int parseInt(int i) throws MalformedLineException {
+            int pos = skipSpaces(starts[i], ends[i]);
+            int end = trimSpaces(pos, ends[i]);
+            boolean negative = pos < end && buf.get(pos) == '-';
+            if (negative || (pos < end && buf.get(pos) == '+')) {
+                pos++;
+            }
+            if (pos == end) {
+                throw new MalformedLineException("field " + (i + 1) + " should be a whole number but is \"" + string(i) + "\".");
+            }
+            long value = 0;
+            for (; pos < end; pos++) {
+                int digit = buf.get(pos) - '0';
+                if (digit < 0 || digit > 9 || (value = value * 10 + digit) > Integer.MAX_VALUE + 1L) {
+                    throw new MalformedLineException("field " + (i + 1) + " should be a whole number but is \"" + string(i) + "\".");
+                }
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE) {
+                throw new MalformedLineException("field " + (i + 1) + " is too large.");
+            }
+            return (int) value;
+        }
+
+        /**
+         * Reads a number, ignoring spaces around it. Plain decimals with up to 15 significant digits
+         * are worked out straight from the digits: the digits and the power of ten are both exact as
+         * doubles, so one division gives the correctly rounded result, the same as Double.parseDouble.
+         * Anything else, such as an exponent, is left to Double.parseDouble.
+         */
+        double parseDouble(int i) throws MalformedLineException {
+            int pos = skipSpaces(starts[i], ends[i]);
+            int end = trimSpaces(pos, ends[i]);
+            boolean negative = pos < end && buf.get(pos) == '-';
+            if (negative || (pos < end && buf.get(pos) == '+')) {
+                pos++;
+            }
+            long digits = 0;
+            int digitCount = 0;
+            int decimals = -1;
+            boolean sawDigit = false;
+            boolean simple = true;
+            for (; pos < end && simple; pos++) {
+                byte b = buf.get(pos);
+                if (b >= '0' && b <= '9') {
+                    sawDigit = true;
+                    if (digits != 0 || b != '0') {
+                        digitCount++;
+                    }
+                    digits = digits * 10 + (b - '0');
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                } else if (b == '.' && decimals < 0) {
+                    decimals = 0;
+                } else {
+                    simple = false;
+                }
+            }
+            if (simple && sawDigit && digitCount <= 15 && decimals < POWERS_OF_TEN.length) {
+                double value = decimals > 0 ? digits / POWERS_OF_TEN[decimals] : digits;
+                return negative ? -value : value;
+            }
+            try {
+                return Double.parseDouble(string(i));
+            } catch (NumberFormatException e) {
+                throw new MalformedLineException("field " + (i + 1) + " should be a number but is \"" + string(i) + "\".");
+            }
+        }
+
+        /**
+         * Finds the enum constant named by a field, comparing the bytes so no String is made.
+         */
+        <E extends Enum<E>> E parseEnum(int i, E[] values) throws MalformedLineException {
+            int length = ends[i] - starts[i];
+            for (E value : values) {
+                String name = value.name();
+                boolean match = name.length() == length;
+                for (int j = 0; j < length && match; j++) {
+                    match = buf.get(starts[i] + j) == name.charAt(j);
+                }
+                if (match) {
+                    return value;
+                }
+            }
+            throw new MalformedLineException("field " + (i + 1) + " \"" + string(i) + "\" is not a valid type.");
+        }
+
+        private int skipSpaces(int pos, int end) {
+            while (pos < end && buf.get(pos) == ' ') {
+                pos++;
+            }
+            return pos;
+        }
+
+        private int trimSpaces(int start, int end) {
+            while (end > start && buf.get(end - 1) == ' ') {
+                end--;
+            }
+            return end;
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+}
@@ -0,0 +1,702 @@
+package maps;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates road networks for scaling and stress tests, either as a Map or straight into
+ * settlements.txt and roads.txt. The same topology, size and seed always give the same network.
+ * <p>
+ * The network is made in chunks, each a band of the map, and everything about a settlement comes
+ * from a random generator seeded with the seed and where the settlement is. So a chunk can work out
+ * the settlements it is joined to in other chunks without anything else being in memory, and the
+ * chunks can be generated in parallel. Writing files only ever holds a few chunks at once, so it can
+ * write networks far bigger than would fit in memory as a Map.
+ * <p>
+ * Settlements are located, and roads are between 5% and 50% longer than the straight line between
+ * their ends, so A* and ALT can be used on every topology. Settlement names are unique, and no two
+ * roads join the same two settlements.
+ * <p>
+ * Usage: java maps.MapGenerator topology size [seed] [directory] (seed defaults to 1 and directory to
+ * the working directory, which should not hold an older map's snapshot or journals).
+ */
+public class MapGenerator {
+
+    /**
+     * The shapes of network which can be generated.
+     */
+    public enum Topology {
+        // A square grid of streets, with every tenth row and column an A road and every fiftieth a motorway.
+        GRID,
+        // Settlements scattered at random, each joined to every settlement within about a mile of it.
+        // Like real rural roads it has dead ends and a few small islands with no road to the rest.
+        RANDOM_GEOMETRIC,
+        // Each settlement joined to two earlier ones, preferring the first few, which become hubs
+        // with thousands of roads. Connected, with the hubs the cities.
+        SCALE_FREE,
+        // Like the UK: cities joined by motorways, a grid of towns joined by A roads, villages joined
+        // to their town by B roads and to each other by lanes, and hamlets off each village.
+        HIERARCHICAL
+    }
+
+    // The south west corner of the map, and how far north the largest map may stretch in degrees.
+    private static final double ORIGIN_LATITUDE = 50;
+    private static final double ORIGIN_LONGITUDE = -6;
+    private static final double SPAN = 8;
+    // A degree of longitude is about two thirds of a degree of latitude this far north.
+    private static final double LONGITUDE_SCALE = 1.5;
+    // Roughly how many settlements each chunk has.
+    private static final int CHUNK_SETTLEMENTS = 16384;
+
+    // RANDOM_GEOMETRIC: settlements in each cell of a grid, up to RANDOM_GEOMETRIC_TRIES of them each
+    // there with probability RANDOM_GEOMETRIC_MEAN / RANDOM_GEOMETRIC_TRIES, joined to those less than
+    // a cell apart, which makes about 2 pi roads each. With fewer than about 4.5 each, most
+    // settlements are on islands of their own.
+    private static final int RANDOM_GEOMETRIC_TRIES = 4;
+    private static final double RANDOM_GEOMETRIC_MEAN = 2;
+
+    // SCALE_FREE: how many earlier settlements each joins, and how strongly the first few are preferred.
+    // Settlement j is picked with probability proportional to (j + 1)^-SCALE_FREE_EXPONENT, which
+    // gives degrees with a power law tail of exponent 1 + 1 / SCALE_FREE_EXPONENT = 3.
+    private static final int SCALE_FREE_LINKS = 2;
+    private static final double SCALE_FREE_EXPONENT = 0.5;
+
+    // HIERARCHICAL: each region has TOWNS x TOWNS town cells, one of them the city, and each town cell
+    // VILLAGES x VILLAGES villages, each with up to HAMLETS hamlets.
+    private static final int TOWNS = 4;
+    private static final int VILLAGES = 4;
+    private static final int HAMLETS = 3;
+    private static final int REGION_SETTLEMENTS = TOWNS * TOWNS * (1 + VILLAGES * VILLAGES * (2 + HAMLETS) / 2);
+    // The chance of a lane between neighbouring villages.
+    private static final double LANE_CHANCE = 0.4;
+
+    // What the random generators are used for, so each use gets different numbers.
+    private static final int SETTLEMENT = 1;
+    private static final int EAST_ROAD = 2;
+    private static final int SOUTH_ROAD = 3;
+    private static final int CELL = 4;
+    private static final int LINKS = 5;
+    private static final int TOWN = 6;
+    private static final int VILLAGE = 7;
+
+    private final Topology topology;
+    private final long seed;
+    // Settlements (or cells, or regions) along each side, for GRID, RANDOM_GEOMETRIC and HIERARCHICAL.
+    private final int side;
+    // The size of a settlement (or cell, or village cell) in degrees of latitude.
+    private final double step;
+    // The number of settlements for SCALE_FREE.
+    private final int size;
+    // How many rows (or settlements for SCALE_FREE) are in a chunk, and how many chunks there are.
+    private final int chunkSize;
+    private final int chunks;
+
+    /**
+     * Receives what a chunk generates.
+     */
+    private interface Sink {
+        void settlement(String name, int population, SettlementType type, double latitude, double longitude);
+
+        void road(String name, Classification classification, double length, String source, String dest);
+    }
+
+    /**
+     * Constructor for a generator.
+     *
+     * @param topology The shape of network to generate.
+     * @param size     The approximate number of settlements.
+     * @param seed     The seed, so the same network can be generated again.
+     * @throws IllegalArgumentException If the size is less than 1, or too big to number the settlements of a grid.
+     */
+    public MapGenerator(Topology topology, int size, long seed) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A map needs at least one settlement.");
+        }
+        this.topology = topology;
+        this.seed = seed;
+        this.size = size;
+        switch (topology) {
+            case GRID:
+                side = (int) Math.ceil(Math.sqrt(size));
+                // Settlements are numbered y * side + x, which has to fit in an int.
+                if ((long) side * side > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("A grid of " + size + " settlements is too big to number.");
+                }
+                step = Math.min(0.01, SPAN / side);
+                chunkSize = Math.max(1, CHUNK_SETTLEMENTS / side);
+                chunks = (side + chunkSize - 1) / chunkSize;
+                break;
+            case RANDOM_GEOMETRIC:
+                side = (int) Math.ceil(Math.sqrt(size / RANDOM_GEOMETRIC_MEAN));
+                step = Math.min(0.015, SPAN / side);
+                chunkSize = Math.max(1, (int) (CHUNK_SETTLEMENTS / RANDOM_GEOMETRIC_MEAN / side));
+                chunks = (side + chunkSize - 1) / chunkSize;
+                break;
+            case SCALE_FREE:
+                side = (int) Math.ceil(Math.sqrt(size));
+                step = Math.min(0.01, SPAN / side);
+                chunkSize = CHUNK_SETTLEMENTS;
+                chunks = (size + chunkSize - 1) / chunkSize;
+                break;
+            case HIERARCHICAL:
+                side = Math.max(1, (int) Math.round(Math.sqrt(size / (double) REGION_SETTLEMENTS)));
+                step = Math.min(0.03, SPAN / (side * TOWNS * VILLAGES));
+                // A chunk is a row of regions.
+                chunkSize = 1;
+                chunks = side;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown topology " + topology);
+        }
+    }
+
+    /**
+     * @return Returns the topology being generated.
+     */
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Generates the network as a new Map.
+     *
+     * @return Returns the map.
+     */
+    public Map generate() {
+        Map map = new Map();
+        map.bulkImport(settlements(), roads());
+        return map;
+    }
+
+    /**
+     * @return Returns the settlements, in the same order each time. The chunks are generated in
+     * parallel.
+     */
+    public Stream<Settlement> settlements() {
+        return IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            ArrayList<Settlement> settlements = new ArrayList<>();
+            generate(chunk, new Sink() {
+                public void settlement(String name, int population, SettlementType type, double latitude,
+                                       double longitude) {
+                    Settlement s = new Settlement(name, population, type);
+                    s.setLocation(latitude, longitude);
+                    settlements.add(s);
+                }
+
+                public void road(String name, Classification classification, double length, String source,
+                                 String dest) {
+                }
+            });
+            return settlements;
+        }).flatMap(List::stream);
+    }
+
+    /**
+     * @return Returns the roads, in the same order each time. The chunks are generated in parallel.
+     */
+    public Stream<RoadRecord> roads() {
+        return IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            ArrayList<RoadRecord> roads = new ArrayList<>();
+            generate(chunk, new Sink() {
+                public void settlement(String name, int population, SettlementType type, double latitude,
+                                       double longitude) {
+                }
+
+                public void road(String name, Classification classification, double length, String source,
+                                 String dest) {
+                    roads.add(new RoadRecord(name, classification, length, source, dest));
+                }
+            });
+            return roads;
+        }).flatMap(List::stream);
+    }
+
+    /**
+     * Writes the network as settlements.txt and roads.txt, in the format Map.load reads. The chunks
+     * are generated a few at a time in parallel and written in order, and as the count of lines
+     * comes first in each file, the lines go to temporary files until the counts are known.
+     *
+     * @param directory The directory to write to.
+     * @return Returns the number of settlements and the number of roads written.
+     * @throws IOException If either file can't be written.
+     */
+    public long[] write(File directory) throws IOException {
+        File settlementBody = new File(directory, "settlements.txt.tmp");
+        File roadBody = new File(directory, "roads.txt.tmp");
+        long[] counts = new long[2];
+        int batch = 2 * Runtime.getRuntime().availableProcessors();
+        try (Writer settlementOut = new FileWriter(settlementBody);
+             Writer roadOut = new FileWriter(roadBody)) {
+            for (int first = 0; first < chunks; first += batch) {
+                List<ChunkText> texts = IntStream.range(first, Math.min(chunks, first + batch)).parallel()
+                        .mapToObj(this::text).toList();
+                for (ChunkText text : texts) {
+                    settlementOut.append(text.settlements);
+                    roadOut.append(text.roads);
+                    counts[0] += text.settlementCount;
+                    counts[1] += text.roadCount;
+                }
+            }
+        }
+        finish(settlementBody, new File(directory, "settlements.txt"), counts[0]);
+        finish(roadBody, new File(directory, "roads.txt"), counts[1]);
+        return counts;
+    }
+
+    /**
+     * Generates a chunk as lines of the two files.
+     */
+    private ChunkText text(int chunk) {
+        ChunkText text = new ChunkText();
+        generate(chunk, text);
+        return text;
+    }
+
+    /**
+     * The lines of settlements.txt and roads.txt for one chunk.
+     */
+    private static class ChunkText implements Sink {
+        private final StringBuilder settlements = new StringBuilder();
+        private final StringBuilder roads = new StringBuilder();
+        private int settlementCount;
+        private int roadCount;
+
+        public void settlement(String name, int population, SettlementType type, double latitude, double longitude) {
+            settlements.append(name).append(':').append(population).append(':').append(type).append(':')
+                    .append(round(latitude, 1e6)).append(':').append(round(longitude, 1e6))
+                    .append(System.lineSeparator());
+            settlementCount++;
+        }
+
+        public void road(String name, Classification classification, double length, String source, String dest) {
+            roads.append(name).append(':').append(classification).append(':').append(length).append(':')
+                    .append(source).append(':').append(dest).append(System.lineSeparator());
+            roadCount++;
+        }
+    }
+
+    /**
+     * Writes the count of lines and then the lines to the file, and deletes the temporary file.
+     */
+    private static void finish(File body, File file, long count) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            PrintWriter header = new PrintWriter(out);
+            header.println(count);
+            header.flush();
+            Files.copy(body.toPath(), out);
+        }
+        Files.delete(body.toPath());
+    }
+
+    /* -------------------_Topologies_----------------------------- */
+
+    private void generate(int chunk, Sink sink) {
+        switch (topology) {
+            case GRID:
+                grid(chunk, sink);
+                break;
+            case RANDOM_GEOMETRIC:
+                randomGeometric(chunk, sink);
+                break;
+            case SCALE_FREE:
+                scaleFree(chunk, sink);
+                break;
+            case HIERARCHICAL:
+                hierarchical(chunk, sink);
+                break;
+        }
+    }
+
+    private void grid(int chunk, Sink sink) {
+        for (int y = chunk * chunkSize; y < Math.min(side, (chunk + 1) * chunkSize); y++) {
+            for (int x = 0; x < side; x++) {
+                int i = y * side + x;
+                SplittableRandom random = random(SETTLEMENT, i);
+                SettlementType type = randomType(random);
+                sink.settlement("S" + i, population(type, random), type, latitude(y), longitude(x));
+                // Each road along a row or column has the number of the row or column.
+                if (x + 1 < side) {
+                    Classification c = gridClass(y);
+                    sink.road(c + "" + (y + 1), c, length(latitude(y), longitude(x), latitude(y), longitude(x + 1),
+                            c, random(EAST_ROAD, i)), "S" + i, "S" + (i + 1));
+                }
+                if (y + 1 < side) {
+                    Classification c = gridClass(x);
+                    sink.road(c + "" + (side + x + 1), c, length(latitude(y), longitude(x), latitude(y + 1),
+                            longitude(x), c, random(SOUTH_ROAD, i)), "S" + i, "S" + (i + side));
+                }
+            }
+        }
+    }
+
+    private static Classification gridClass(int line) {
+        if (line % 50 == 0) {
+            return Classification.M;
+        } else if (line % 10 == 0) {
+            return Classification.A;
+        } else if (line % 3 == 0) {
+            return Classification.B;
+        }
+        return Classification.U;
+    }
+
+    private void randomGeometric(int chunk, Sink sink) {
+        for (int cy = chunk * chunkSize; cy < Math.min(side, (chunk + 1) * chunkSize); cy++) {
+            for (int cx = 0; cx < side; cx++) {
+                double[] points = cell(cx, cy);
+                for (int k = 0; k < points.length / 2; k++) {
+                    SettlementType type = cellType(cx, cy, k);
+                    sink.settlement(cellName(cx, cy, k), population(type, random(SETTLEMENT, cx, cy, k)), type,
+                            latitude(points[2 * k + 1]), longitude(points[2 * k]));
+                    // Each pair is joined by whichever of the two comes first, row by row.
+                    for (int ny = cy; ny <= Math.min(side - 1, cy + 1); ny++) {
+                        for (int nx = Math.max(0, cx - 1); nx <= Math.min(side - 1, cx + 1); nx++) {
+                            if (ny == cy && nx < cx) {
+                                continue;
+                            }
+                            double[] others = nx == cx && ny == cy ? points : cell(nx, ny);
+                            for (int j = nx == cx && ny == cy ? k + 1 : 0; j < others.length / 2; j++) {
+                                double dx = others[2 * j] - points[2 * k];
+                                double dy = others[2 * j + 1] - points[2 * k + 1];
+                                if (dx * dx + dy * dy < 1) {
+                                    SplittableRandom random = random(LINKS, cx, cy, k, nx, ny, j);
+                                    Classification c = roadClass(type, cellType(nx, ny, j));
+                                    sink.road(c + "" + (1 + random.nextInt(9999)), c,
+                                            length(latitude(points[2 * k + 1]), longitude(points[2 * k]),
+                                                    latitude(others[2 * j + 1]), longitude(others[2 * j]), c, random),
+                                            cellName(cx, cy, k), cellName(nx, ny, j));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Returns the x and y of each settlement in a cell, in cells from the corner of the map.
+     */
+    private double[] cell(int cx, int cy) {
+        SplittableRandom random = random(CELL, cx, cy);
+        int count = 0;
+        for (int i = 0; i < RANDOM_GEOMETRIC_TRIES; i++) {
+            if (random.nextDouble() < RANDOM_GEOMETRIC_MEAN / RANDOM_GEOMETRIC_TRIES) {
+                count++;
+            }
+        }
+        double[] points = new double[2 * count];
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = cx + random.nextDouble();
+            points[i + 1] = cy + random.nextDouble();
+        }
+        return points;
+    }
+
+    private SettlementType cellType(int cx, int cy, int k) {
+        return randomType(random(SETTLEMENT, cx, cy, k));
+    }
+
+    private static String cellName(int cx, int cy, int k) {
+        return "G" + cx + "_" + cy + "_" + k;
+    }
+
+    private void scaleFree(int chunk, Sink sink) {
+        for (int i = chunk * chunkSize; i < Math.min(size, (chunk + 1) * chunkSize); i++) {
+            SettlementType type = scaleFreeType(i);
+            double[] position = scaleFreePosition(i);
+            sink.settlement("N" + i, population(type, random(SETTLEMENT, i)), type, position[0], position[1]);
+            SplittableRandom random = random(LINKS, i);
+            int previous = -1;
+            for (int link = 0; link < Math.min(i, SCALE_FREE_LINKS); link++) {
+                int j = preferredEarlier(i, random);
+                // A second pick of the same settlement is tried again once, and otherwise dropped.
+                if (j == previous) {
+                    j = preferredEarlier(i, random);
+                    if (j == previous) {
+                        continue;
+                    }
+                }
+                previous = j;
+                double[] other = scaleFreePosition(j);
+                Classification c = roadClass(type, scaleFreeType(j));
+                sink.road(c + "" + (1 + random.nextInt(9999)), c,
+                        length(position[0], position[1], other[0], other[1], c, random), "N" + i, "N" + j);
+            }
+        }
+    }
+
+    /**
+     * Picks one of the settlements before i, with settlement j picked with probability proportional
+     * to (j + 1)^-SCALE_FREE_EXPONENT, by inverting the integral of that.
+     */
+    private static int preferredEarlier(int i, SplittableRandom random) {
+        double power = 1 - SCALE_FREE_EXPONENT;
+        double x = Math.pow(1 + random.nextDouble() * (Math.pow(i + 1, power) - 1), 1 / power) - 1;
+        return Math.min(i - 1, (int) x);
+    }
+
+    /**
+     * The first few settlements are the hubs, so they are the cities.
+     */
+    private SettlementType scaleFreeType(int i) {
+        double rank = i / (double) size;
+        if (rank < 0.002) {
+            return SettlementType.CITY;
+        } else if (rank < 0.05) {
+            return SettlementType.TOWN;
+        } else if (rank < 0.4) {
+            return SettlementType.VILLAGE;
+        }
+        return SettlementType.HAMLET;
+    }
+
+    private double[] scaleFreePosition(int i) {
+        SplittableRandom random = random(CELL, i);
+        return new double[]{latitude(random.nextDouble() * side), longitude(random.nextDouble() * side)};
+    }
+
+    /**
+     * Generates a row of regions. Towns and villages are on grids of their own, with TOWNS town cells
+     * and TOWNS * VILLAGES village cells along each side of a region.
+     */
+    private void hierarchical(int chunk, Sink sink) {
+        int townSide = side * TOWNS;
+        int villageSide = townSide * VILLAGES;
+        for (int ty = chunk * TOWNS; ty < (chunk + 1) * TOWNS; ty++) {
+            for (int tx = 0; tx < townSide; tx++) {
+                double[] town = townPosition(tx, ty);
+                SettlementType type = isCity(tx, ty) ? SettlementType.CITY : SettlementType.TOWN;
+                sink.settlement(townName(tx, ty), population(type, random(SETTLEMENT, TOWN, tx, ty)), type, town[0],
+                        town[1]);
+                if (type == SettlementType.CITY) {
+                    // Motorways to the next cities east and south.
+                    if (tx + TOWNS < townSide) {
+                        townRoad(sink, Classification.M, tx, ty, tx + TOWNS, ty);
+                    }
+                    if (ty + TOWNS < townSide) {
+                        townRoad(sink, Classification.M, tx, ty, tx, ty + TOWNS);
+                    }
+                }
+                if (tx + 1 < townSide) {
+                    townRoad(sink, Classification.A, tx, ty, tx + 1, ty);
+                }
+                if (ty + 1 < townSide) {
+                    townRoad(sink, Classification.A, tx, ty, tx, ty + 1);
+                }
+            }
+        }
+        for (int vy = chunk * TOWNS * VILLAGES; vy < (chunk + 1) * TOWNS * VILLAGES; vy++) {
+            for (int vx = 0; vx < villageSide; vx++) {
+                double[] village = villagePosition(vx, vy);
+                SplittableRandom random = random(SETTLEMENT, VILLAGE, vx, vy);
+                String name = "V" + vx + "_" + vy;
+                sink.settlement(name, population(SettlementType.VILLAGE, random), SettlementType.VILLAGE, village[0],
+                        village[1]);
+                int tx = vx / VILLAGES;
+                int ty = vy / VILLAGES;
+                double[] town = townPosition(tx, ty);
+                sink.road("B" + (1000 + (tx + ty * townSide) % 8000), Classification.B,
+                        length(village[0], village[1], town[0], town[1], Classification.B, random), name,
+                        townName(tx, ty));
+                if (vx + 1 < villageSide && random.nextDouble() < LANE_CHANCE) {
+                    double[] east = villagePosition(vx + 1, vy);
+                    sink.road("U" + (1 + random.nextInt(9999)), Classification.U,
+                            length(village[0], village[1], east[0], east[1], Classification.U, random), name,
+                            "V" + (vx + 1) + "_" + vy);
+                }
+                if (vy + 1 < villageSide && random.nextDouble() < LANE_CHANCE) {
+                    double[] south = villagePosition(vx, vy + 1);
+                    sink.road("U" + (1 + random.nextInt(9999)), Classification.U,
+                            length(village[0], village[1], south[0], south[1], Classification.U, random), name,
+                            "V" + vx + "_" + (vy + 1));
+                }
+                int hamlets = random.nextInt(HAMLETS + 1);
+                for (int h = 0; h < hamlets; h++) {
+                    String hamlet = name + "_" + h;
+                    double latitude = village[0] + (random.nextDouble() - 0.5) * 0.6 * step;
+                    double longitude = village[1] + (random.nextDouble() - 0.5) * 0.6 * step * LONGITUDE_SCALE;
+                    sink.settlement(hamlet, population(SettlementType.HAMLET, random), SettlementType.HAMLET,
+                            latitude, longitude);
+                    sink.road("U" + (1 + random.nextInt(9999)), Classification.U,
+                            length(latitude, longitude, village[0], village[1], Classification.U, random), hamlet,
+                            name);
+                }
+            }
+        }
+    }
+
+    private void townRoad(Sink sink, Classification c, int tx, int ty, int ox, int oy) {
+        double[] a = townPosition(tx, ty);
+        double[] b = townPosition(ox, oy);
+        SplittableRandom random = random(c == Classification.M ? SOUTH_ROAD : EAST_ROAD, tx, ty, ox, oy);
+        sink.road(c + "" + (1 + random.nextInt(c == Classification.M ? 99 : 999)), c,
+                length(a[0], a[1], b[0], b[1], c, random), townName(tx, ty), townName(ox, oy));
+    }
+
+    /**
+     * One town cell in each region, the same one in each, has the city.
+     */
+    private static boolean isCity(int tx, int ty) {
+        return tx % TOWNS == 1 && ty % TOWNS == 1;
+    }
+
+    private static String townName(int tx, int ty) {
+        return (isCity(tx, ty) ? "C" : "T") + tx + "_" + ty;
+    }
+
+    private double[] townPosition(int tx, int ty) {
+        SplittableRandom random = random(CELL, TOWN, tx, ty);
+        double cell = VILLAGES;
+        return new double[]{latitude((ty + 0.2 + 0.6 * random.nextDouble()) * cell),
+                longitude((tx + 0.2 + 0.6 * random.nextDouble()) * cell)};
+    }
+
+    private double[] villagePosition(int vx, int vy) {
+        SplittableRandom random = random(CELL, VILLAGE, vx, vy);
+        return new double[]{latitude(vy + 0.2 + 0.6 * random.nextDouble()),
+                longitude(vx + 0.2 + 0.6 * random.nextDouble())};
+    }
+
+    /* -------------------_Shared_----------------------------- */
+
+    /**
+     * @param y How far north, in steps from the corner of the map.
+     * @return Returns the latitude.
+     */
+    private double latitude(double y) {
+        return ORIGIN_LATITUDE + y * step;
+    }
+
+    /**
+     * @param x How far east, in steps from the corner of the map.
+     * @return Returns the longitude.
+     */
+    private double longitude(double x) {
+        return ORIGIN_LONGITUDE + x * step * LONGITUDE_SCALE;
+    }
+
+    /**
+     * Makes a random generator for one thing on the map, from the seed and numbers saying what and
+     * where it is, so it gives the same numbers whichever chunk or thread asks for it.
+     */
+    private SplittableRandom random(int... keys) {
+        long h = seed;
+        for (int key : keys) {
+            h = mix(h * 0x9E3779B97F4A7C15L + key);
+        }
+        return new SplittableRandom(h);
+    }
+
+    /**
+     * The finishing step of SplitMix64, which spreads every bit of the input over the output.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Picks a type with about as many of each as in the UK: mostly hamlets and villages.
+     */
+    private static SettlementType randomType(SplittableRandom random) {
+        double r = random.nextDouble();
+        if (r < 0.35) {
+            return SettlementType.HAMLET;
+        } else if (r < 0.80) {
+            return SettlementType.VILLAGE;
+        } else if (r < 0.97) {
+            return SettlementType.TOWN;
+        }
+        return SettlementType.CITY;
+    }
+
+    /**
+     * Picks a population for a type of settlement, spread evenly on a log scale so small ones are commoner.
+     */
+    private static int population(SettlementType type, SplittableRandom random) {
+        int low;
+        int high;
+        switch (type) {
+            case HAMLET:
+                low = 10;
+                high = 200;
+                break;
+            case VILLAGE:
+                low = 200;
+                high = 3000;
+                break;
+            case TOWN:
+                low = 3000;
+                high = 100000;
+                break;
+            default:
+                low = 100000;
+                high = 1000000;
+        }
+        return (int) Math.exp(Math.log(low) + random.nextDouble() * (Math.log(high) - Math.log(low)));
+    }
+
+    /**
+     * Roads between big places are big roads: motorways between cities, A roads between towns, B
+     * roads from villages and lanes to hamlets.
+     */
+    private static Classification roadClass(SettlementType a, SettlementType b) {
+        int smaller = Math.min(a.ordinal(), b.ordinal());
+        int larger = Math.max(a.ordinal(), b.ordinal());
+        if (smaller == SettlementType.CITY.ordinal()) {
+            return Classification.M;
+        } else if (smaller == SettlementType.TOWN.ordinal()) {
+            return Classification.A;
+        } else if (smaller == SettlementType.VILLAGE.ordinal()) {
+            return larger >= SettlementType.TOWN.ordinal() ? Classification.A : Classification.B;
+        }
+        return Classification.U;
+    }
+
+    /**
+     * Works out how long a road is. Motorways and A roads are straighter than lanes.
+     *
+     * @return Returns the length in miles, to two decimal places and at least 0.1.
+     */
+    private static double length(double lat1, double lon1, double lat2, double lon2, Classification c,
+                                 SplittableRandom random) {
+        double detour = c == Classification.M || c == Classification.A ? 1.05 + 0.2 * random.nextDouble()
+                : 1.1 + 0.4 * random.nextDouble();
+        return Math.max(0.1, round(Settlement.greatCircleMiles(lat1, lon1, lat2, lon2) * detour, 100));
+    }
+
+    private static double round(double value, double scale) {
+        return Math.round(value * scale) / scale;
+    }
+
+    /* -------------------_Static Stuff_----------------------------- */
+
+    public static void main(String args[]) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java maps.MapGenerator GRID|RANDOM_GEOMETRIC|SCALE_FREE|HIERARCHICAL size [seed] [directory]");
+            System.exit(2);
+        }
+        Topology topology = Topology.valueOf(args[0].toUpperCase());
+        int size = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        File directory = new File(args.length > 3 ? args[3] : ".");
+        long start = System.nanoTime();
+        long[] counts = new MapGenerator(topology, size, seed).write(directory);
+        System.out.printf("%,d settlements and %,d roads written to %s in %.1f s%n", counts[0], counts[1],
+                directory, (System.nanoTime() - start) / 1e9);
+    }
+}
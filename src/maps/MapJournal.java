@@ -0,0 +1,445 @@
+package maps;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append only record of the changes made to a map, so a change is saved within moments of being
+ * made without writing the whole map. Each change is one line of journal-N.txt, where N is the
+ * generation, with the fields separated by ':' as in the other map files:
+ * <pre>
+ *   ADD_SETTLEMENT:name:population:type[:latitude:longitude]
+ *   REMOVE_SETTLEMENT:name
+ *   DELETE_ROADS:settlement
+ *   POPULATION:name:population
+ *   KIND:name:type
+ *   LOCATION:name:latitude:longitude
+ *   ADD_ROAD:name:classification:length:source:destination
+ *   REMOVE_ROAD:name:source:destination
+ *   LENGTH:name:source:destination:length
+ *   RENAME_ROAD:name:source:destination:new name
+ *   IMPORT:settlements:roads
+ * </pre>
+ * An IMPORT line is followed by that many ADD_SETTLEMENT lines and then that many ADD_ROAD lines,
+ * which are replayed together as one bulk import.
+ * When a generation grows past COMPACT_THRESHOLD changes, later changes go to the next generation and
+ * the map as it was at the end of the full one is written out in the background. In order, the
+ * binary snapshot is written recording the generation it includes, the text files are written and
+ * only then are the journals it includes deleted. Map.load picks the snapshot by the generation it
+ * records, so whichever step a crash happens at, the map files it picks plus the journals left hold
+ * every change. Changes may be recorded from several threads. A change being made on another
+ * thread when a generation fills up can be in both the copy and the next generation. Replaying it
+ * again then either sets the same value or is rejected as already done.
+ */
+public class MapJournal {
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".txt";
+    // The number of changes in a generation before the map is written out in full.
+    public static final int COMPACT_THRESHOLD = 10000;
+    // How often the changes recorded since the last flush are flushed to the file.
+    public static final long FLUSH_INTERVAL_MILLIS = 50;
+
+    private Map map;
+    private File directory;
+    private long generation;
+    private BufferedWriter out;
+    private int entries;
+    // Compaction runs on a single background thread, one at a time.
+    private ExecutorService compactor;
+    private Future<?> compaction;
+    private ScheduledExecutorService flusher;
+    // true once a change has been written since the last flush
+    private boolean dirty;
+
+    /**
+     * Starts journalling the changes to a map, appending to the given generation.
+     *
+     * @param map        The map being changed.
+     * @param directory  The directory holding the map files.
+     * @param generation The generation to append to.
+     * @param entries    The number of changes already in that generation.
+     * @throws IOException If the journal can't be opened.
+     */
+    MapJournal(Map map, File directory, long generation, int entries) throws IOException {
+        this.map = map;
+        this.directory = directory;
+        this.generation = generation;
+        this.entries = entries;
+        out = new BufferedWriter(new FileWriter(file(directory, generation), true));
+        compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "map journal compaction");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "map journal flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Returns the directory holding the journal.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return Returns the generation changes are being written to.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return Returns the number of changes in the current generation.
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Appends a change to the journal. The changes are flushed together every FLUSH_INTERVAL_MILLIS
+     * rather than one at a time, so only the changes made in that time before the program is killed
+     * can be lost. If the generation is now full the map is compacted in the background.
+     *
+     * @param fields The type of change followed by its details.
+     */
+    synchronized void record(Object... fields) {
+        write(fields);
+        entries++;
+        startCompactionIfFull();
+    }
+
+    /**
+     * Appends a bulk import to the journal as one IMPORT record, written in one go.
+     *
+     * @param settlements The settlements which were added.
+     * @param roads       The roads which were added.
+     */
+    synchronized void recordImport(List<Settlement> settlements, List<Road> roads) {
+        write("IMPORT", settlements.size(), roads.size());
+        for (Settlement s : settlements) {
+            write(settlementFields(s));
+        }
+        for (Road r : roads) {
+            write("ADD_ROAD", r.getName(), r.getClassification(), r.getLength(),
+                    r.getSourceSettlement().getName(), r.getDestinationSettlement().getName());
+        }
+        entries += 1 + settlements.size() + roads.size();
+        startCompactionIfFull();
+    }
+
+    /**
+     * @return Returns the fields of the ADD_SETTLEMENT change for a settlement.
+     */
+    static Object[] settlementFields(Settlement s) {
+        if (s.hasLocation()) {
+            return new Object[]{"ADD_SETTLEMENT", s.getName(), s.getPopulation(), s.getKind(),
+                    s.getLatitude(), s.getLongitude()};
+        }
+        return new Object[]{"ADD_SETTLEMENT", s.getName(), s.getPopulation(), s.getKind()};
+    }
+
+    private void write(Object... fields) {
+        StringBuilder line = new StringBuilder();
+        for (Object field : fields) {
+            if (line.length() > 0) {
+                line.append(':');
+            }
+            line.append(field);
+        }
+        try {
+            out.write(line.toString());
+            out.newLine();
+            dirty = true;
+        } catch (IOException e) {
+            System.err.println("Journal not written: " + e.getMessage());
+        }
+    }
+
+    private void startCompactionIfFull() {
+        if (entries >= COMPACT_THRESHOLD && (compaction == null || compaction.isDone())) {
+            try {
+                compaction = compactor.submit(startCompaction());
+            } catch (IOException e) {
+                System.err.println("Journal compaction not started: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Flushes the changes written since the last flush, called every FLUSH_INTERVAL_MILLIS.
+     */
+    synchronized void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Journal not written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the whole map out now, on this thread, and starts a new generation.
+     *
+     * @throws IOException If the map files can't be written.
+     */
+    synchronized void compactNow() throws IOException {
+        waitForCompaction();
+        try {
+            startCompaction().call();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Closes the journal once any compaction has finished.
+     */
+    synchronized void close() {
+        waitForCompaction();
+        compactor.shutdown();
+        flusher.shutdown();
+        dirty = false;
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private void waitForCompaction() {
+        if (compaction != null) {
+            try {
+                compaction.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.err.println("Journal compaction failed: " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Moves on to the next generation and copies the map, which is done on the thread changing the
+     * map, then returns the writing to do with the copy.
+     */
+    private Callable<Void> startCompaction() throws IOException {
+        long full = generation;
+        out.close();
+        dirty = false;
+        generation++;
+        entries = 0;
+        out = new BufferedWriter(new FileWriter(file(directory, generation), true));
+        MapSnapshot snapshot = map.capture();
+        return () -> {
+            File binary = new File(directory, MapSnapshot.FILE_NAME);
+            snapshot.writeBinary(binary.getPath(), full);
+            snapshot.writeText(directory);
+            // Both copies of the map now hold the changes in these generations, so they can go.
+            for (long g : generations(directory)) {
+                if (g <= full) {
+                    file(directory, g).delete();
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Finds the journal generations in a directory.
+     *
+     * @param directory The directory holding the map files.
+     * @return Returns the generations in ascending order.
+     */
+    static ArrayList<Long> generations(File directory) {
+        ArrayList<Long> ret = new ArrayList<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    try {
+                        ret.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // not one of ours
+                    }
+                }
+            }
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    static File file(File directory, long generation) {
+        return new File(directory, PREFIX + generation + SUFFIX);
+    }
+
+    /**
+     * Replays the journals after a generation onto a map, in order. A line which can't be replayed,
+     * such as a half written last line, is reported and skipped.
+     *
+     * @param directory The directory holding the map files.
+     * @param after     The last generation already included in the map.
+     * @param map       The map, which must not have a journal attached while replaying.
+     * @return Returns the number of changes replayed from the last generation, -1 if there were no journals.
+     */
+    static int replay(File directory, long after, Map map) {
+        int entries = -1;
+        for (long g : generations(directory)) {
+            if (g <= after) {
+                continue;
+            }
+            entries = 0;
+            File file = file(directory, g);
+            try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+                String line;
+                int lineNumber = 0;
+                while ((line = in.readLine()) != null) {
+                    lineNumber++;
+                    entries++;
+                    String[] f = line.split(":", -1);
+                    try {
+                        if (f[0].equals("IMPORT")) {
+                            int read = replayImport(Integer.parseInt(f[1]), Integer.parseInt(f[2]), in, file,
+                                    lineNumber, map);
+                            lineNumber += read;
+                            entries += read;
+                        } else {
+                            apply(f, map);
+                        }
+                    } catch (RuntimeException e) {
+                        System.err.println("Change not replayed, " + file.getName() + " line " + lineNumber
+                                + ": " + line);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the lines of an IMPORT record and adds them to the map with one bulk import. A half
+     * written record, cut short by the end of the file, is imported as far as it goes.
+     *
+     * @return Returns the number of lines read after the IMPORT line.
+     */
+    private static int replayImport(int settlementCount, int roadCount, BufferedReader in, File file, int importLine,
+                                    Map map) throws IOException {
+        ArrayList<Settlement> settlements = new ArrayList<>(settlementCount);
+        ArrayList<RoadRecord> roads = new ArrayList<>(roadCount);
+        int read = 0;
+        String line;
+        while (read < settlementCount + roadCount && (line = in.readLine()) != null) {
+            read++;
+            String[] f = line.split(":", -1);
+            try {
+                if (read <= settlementCount) {
+                    settlements.add(parseSettlement(f));
+                } else {
+                    roads.add(new RoadRecord(f[1], Classification.valueOf(f[2]), Double.parseDouble(f[3]), f[4],
+                            f[5], importLine + read));
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Change not replayed, " + file.getName() + " line " + (importLine + read)
+                        + ": " + line);
+            }
+        }
+        ImportReport report = map.bulkImport(settlements.stream(), roads.stream());
+        for (ImportReport.Rejection r : report.getRejections()) {
+            System.err.println("Change not replayed, " + file.getName() + " " + r);
+        }
+        return read;
+    }
+
+    private static Settlement parseSettlement(String[] f) {
+        Settlement s = new Settlement(f[1], Integer.parseInt(f[2]), SettlementType.valueOf(f[3]));
+        if (f.length >= 6) {
+            s.setLocation(Double.parseDouble(f[4]), Double.parseDouble(f[5]));
+        }
+        return s;
+    }
+
+    private static void apply(String[] f, Map map) {
+        switch (f[0]) {
+            case "ADD_SETTLEMENT":
+                map.addSettlement(parseSettlement(f));
+                break;
+            case "REMOVE_SETTLEMENT":
+                if (!map.removeSettlement(f[1])) {
+                    throw new IllegalArgumentException("No settlement " + f[1]);
+                }
+                break;
+            case "DELETE_ROADS":
+                settlement(map, f[1]).deleteRoads();
+                break;
+            case "POPULATION":
+                settlement(map, f[1]).setPopulation(Integer.parseInt(f[2]));
+                break;
+            case "KIND":
+                settlement(map, f[1]).setKind(SettlementType.valueOf(f[2]));
+                break;
+            case "LOCATION":
+                settlement(map, f[1]).setLocation(Double.parseDouble(f[2]), Double.parseDouble(f[3]));
+                break;
+            case "ADD_ROAD":
+                map.addRoad(f[1], Classification.valueOf(f[2]), settlement(map, f[4]), settlement(map, f[5]),
+                        Double.parseDouble(f[3]));
+                break;
+            case "REMOVE_ROAD":
+                if (!map.removeRoad(road(map, f[1], f[2], f[3]))) {
+                    throw new IllegalArgumentException("No road " + f[1]);
+                }
+                break;
+            case "LENGTH":
+                road(map, f[1], f[2], f[3]).setLength(Double.parseDouble(f[4]));
+                break;
+            case "RENAME_ROAD":
+                road(map, f[1], f[2], f[3]).setName(f[4]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown change " + f[0]);
+        }
+    }
+
+    private static Settlement settlement(Map map, String name) {
+        Settlement s = map.getSettlement(name);
+        if (s == null) {
+            throw new IllegalArgumentException("No settlement " + name);
+        }
+        return s;
+    }
+
+    private static Road road(Map map, String name, String source, String dest) {
+        Road r = map.findRoad(name, source, dest);
+        if (r == null) {
+            throw new IllegalArgumentException("No road " + name);
+        }
+        return r;
+    }
+}
@@ -0,0 +1,28 @@
+package maps;
+
+/**
+ * What JMX shows of loading and saving a map: how often, how long it took and how many bytes of
+ * files were read or written.
+ */
+public interface MapPersistenceMXBean {
+
+    long getLoadCount();
+
+    long getLastLoadMillis();
+
+    long getTotalLoadMillis();
+
+    long getLastLoadBytes();
+
+    long getTotalLoadBytes();
+
+    long getSaveCount();
+
+    long getLastSaveMillis();
+
+    long getTotalSaveMillis();
+
+    long getLastSaveBytes();
+
+    long getTotalSaveBytes();
+}
@@ -0,0 +1,364 @@
+package maps;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A copy of the settlements and roads of a map at one moment, held in plain arrays so it can be
+ * written out on another thread while the map carries on changing. It can be written as the text
+ * files or as a binary snapshot, which is much quicker to load than the text files as nothing has to
+ * be split up or parsed. The binary file is laid out as:
+ * <pre>
+ *   int magic, int format version, long journal generation,
+ *   int string count, int settlement count, int road count
+ *   the string table: for each string an int byte count then its UTF-8 bytes
+ *   the settlements: int[] populations, byte[] types, double[] latitudes, double[] longitudes
+ *   the roads: int[] names, byte[] classifications, double[] lengths, int[] sources, int[] destinations
+ *   int CRC32 of everything before it
+ * </pre>
+ * The first strings in the table are the settlement names, in the same order as the settlements,
+ * so road ends are stored as the index of the settlement. Road names are stored once however many
+ * roads share them. Types and classifications are enum ordinals, and an unknown location is NaN.
+ * The journal generation is the last MapJournal file whose changes are included.
+ */
+public class MapSnapshot {
+
+    public static final String FILE_NAME = "map.bin";
+    // "CSMP" in ASCII
+    private static final int MAGIC = 0x43534D50;
+    // Changed whenever the layout changes, older files are then ignored and the text files loaded.
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 28;
+
+    private String[] settlementNames;
+    private int[] populations;
+    private byte[] types;
+    private double[] latitudes;
+    private double[] longitudes;
+    private String[] roadNames;
+    private byte[] classifications;
+    private double[] lengths;
+    private int[] sources;
+    private int[] dests;
+
+    private MapSnapshot() {
+    }
+
+    /**
+     * Copies the current state of a map. This only fills arrays, so it is quick enough to do on the
+     * thread changing the map.
+     *
+     * @param map The map to copy.
+     * @return Returns the copy.
+     */
+    public static MapSnapshot capture(Map map) {
+        ArrayList<Settlement> settlements = map.getSettlements();
+        ArrayList<Road> roads = map.getRoads();
+        MapSnapshot snapshot = new MapSnapshot();
+        int n = settlements.size();
+        snapshot.settlementNames = new String[n];
+        snapshot.populations = new int[n];
+        snapshot.types = new byte[n];
+        snapshot.latitudes = new double[n];
+        snapshot.longitudes = new double[n];
+        // The position of each settlement in the arrays, by settlement id.
+        int[] index = new int[map.getSettlementIdLimit()];
+        for (int i = 0; i < n; i++) {
+            Settlement s = settlements.get(i);
+            snapshot.settlementNames[i] = s.getName();
+            snapshot.populations[i] = s.getPopulation();
+            snapshot.types[i] = (byte) s.getKind().ordinal();
+            snapshot.latitudes[i] = s.getLatitude();
+            snapshot.longitudes[i] = s.getLongitude();
+            index[s.getId()] = i;
+        }
+        int m = roads.size();
+        snapshot.roadNames = new String[m];
+        snapshot.classifications = new byte[m];
+        snapshot.lengths = new double[m];
+        snapshot.sources = new int[m];
+        snapshot.dests = new int[m];
+        for (int i = 0; i < m; i++) {
+            Road r = roads.get(i);
+            snapshot.roadNames[i] = r.getName();
+            snapshot.classifications[i] = (byte) r.getClassification().ordinal();
+            snapshot.lengths[i] = r.getLength();
+            snapshot.sources[i] = index[r.getSourceSettlement().getId()];
+            snapshot.dests[i] = index[r.getDestinationSettlement().getId()];
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes settlements.txt and roads.txt in the format Map.load reads. Each is written to a
+     * temporary file first and then moved into place, so a failed save never leaves half a file behind.
+     *
+     * @param directory The directory to write the files to.
+     * @throws IOException If either file can't be written.
+     */
+    public void writeText(File directory) throws IOException {
+        SettlementType[] settlementTypes = SettlementType.values();
+        File settlementFile = new File(directory, "settlements.txt");
+        File temp = new File(directory, "settlements.txt.tmp");
+        try (PrintWriter outfile = new PrintWriter(new FileWriter(temp))) {
+            // Print amount of settlements in file
+            outfile.println(settlementNames.length);
+            for (int i = 0; i < settlementNames.length; i++) {
+                String line = settlementNames[i] + ":" + populations[i] + ":" + settlementTypes[types[i]];
+                // The location is only written when known, so files without locations stay the same.
+                if (!Double.isNaN(latitudes[i]) && !Double.isNaN(longitudes[i])) {
+                    line += ":" + latitudes[i] + ":" + longitudes[i];
+                }
+                outfile.println(line);
+            }
+        }
+        replace(temp, settlementFile);
+
+        Classification[] classes = Classification.values();
+        File roadFile = new File(directory, "roads.txt");
+        temp = new File(directory, "roads.txt.tmp");
+        try (PrintWriter outfile = new PrintWriter(new FileWriter(temp))) {
+            // Print amount of roads in file
+            outfile.println(roadNames.length);
+            for (int i = 0; i < roadNames.length; i++) {
+                outfile.println(roadNames[i] + ":" + classes[classifications[i]] + ":" + lengths[i] + ":" +
+                        settlementNames[sources[i]] + ":" + settlementNames[dests[i]]);
+            }
+        }
+        replace(temp, roadFile);
+    }
+
+    /**
+     * Writes the binary snapshot. It is written to a temporary file first and then moved into place,
+     * so a failed save never leaves half a snapshot behind.
+     *
+     * @param fileName   The file to write.
+     * @param generation The last journal generation included in this copy of the map.
+     * @throws IOException If the file can't be written.
+     */
+    public void writeBinary(String fileName, long generation) throws IOException {
+        ArrayList<String> strings = new ArrayList<>();
+        for (String name : settlementNames) {
+            strings.add(name);
+        }
+        // Road names get their own entries after the settlements, one for each different name.
+        HashMap<String, Integer> roadNameIds = new HashMap<>();
+        int[] roadNameIndexes = new int[roadNames.length];
+        for (int i = 0; i < roadNames.length; i++) {
+            Integer id = roadNameIds.get(roadNames[i]);
+            if (id == null) {
+                id = strings.size();
+                strings.add(roadNames[i]);
+                roadNameIds.put(roadNames[i], id);
+            }
+            roadNameIndexes[i] = id;
+        }
+
+        File file = new File(fileName);
+        File temp = new File(file.getPath() + ".tmp");
+        CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 1 << 16), new CRC32());
+        try (DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(generation);
+            out.writeInt(strings.size());
+            out.writeInt(settlementNames.length);
+            out.writeInt(roadNames.length);
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (int population : populations) {
+                out.writeInt(population);
+            }
+            out.write(types);
+            for (double latitude : latitudes) {
+                out.writeDouble(latitude);
+            }
+            for (double longitude : longitudes) {
+                out.writeDouble(longitude);
+            }
+            for (int name : roadNameIndexes) {
+                out.writeInt(name);
+            }
+            out.write(classifications);
+            for (double length : lengths) {
+                out.writeDouble(length);
+            }
+            for (int source : sources) {
+                out.writeInt(source);
+            }
+            for (int dest : dests) {
+                out.writeInt(dest);
+            }
+            // The checksum is taken before it is written, so it only covers what came before it.
+            out.writeInt((int) checked.getChecksum().getValue());
+        }
+        replace(temp, file);
+    }
+
+    private static void replace(File temp, File file) throws IOException {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the journal generation recorded in a binary snapshot without reading the rest of it.
+     *
+     * @param fileName The file to read.
+     * @return Returns the last journal generation included in the snapshot.
+     * @throws IOException If the file can't be read or isn't a snapshot of this format version.
+     */
+    public static long readGeneration(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(fileName + " is not a map snapshot.");
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(fileName + " has format version " + version + ", expected " + FORMAT_VERSION + ".");
+            }
+            return in.readLong();
+        } catch (EOFException e) {
+            throw new IOException(fileName + " is not a map snapshot.");
+        }
+    }
+
+    /**
+     * Reads a binary snapshot into a map. The whole file is checked before anything is added, so the
+     * map is left untouched if the file is damaged.
+     *
+     * @param fileName The file to read.
+     * @param map      The map to add the settlements and roads to, normally an empty one.
+     * @return Returns the last journal generation included in the snapshot.
+     * @throws IOException If the file can't be read, is from another format version or is damaged.
+     */
+    public static long read(String fileName, Map map) throws IOException {
+        // Not memory mapped, so map.bin can be replaced by the next compaction as soon as this returns.
+        ByteBuffer buf = MapFileParser.readFully(fileName);
+        int size = buf.limit();
+        if (size < HEADER_BYTES + 4 || buf.getInt(0) != MAGIC) {
+            throw new IOException(fileName + " is not a map snapshot.");
+        }
+        if (buf.getInt(4) != FORMAT_VERSION) {
+            throw new IOException(fileName + " has format version " + buf.getInt(4) + ", expected " + FORMAT_VERSION + ".");
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buf.duplicate();
+        body.limit(size - 4);
+        crc.update(body);
+        if ((int) crc.getValue() != buf.getInt(size - 4)) {
+            throw new IOException(fileName + " is damaged, its checksum doesn't match.");
+        }
+
+        long generation;
+        Settlement[] settlements;
+        String[] strings;
+        byte[] classifications;
+        double[] lengths;
+        int[] roadNames;
+        int[] sources;
+        int[] dests;
+        try {
+            buf.position(8);
+            generation = buf.getLong();
+            strings = new String[buf.getInt()];
+            settlements = new Settlement[buf.getInt()];
+            int roadCount = buf.getInt();
+            if (settlements.length > strings.length || roadCount < 0) {
+                throw new IOException(fileName + " has an invalid header.");
+            }
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[buf.getInt()];
+                buf.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            int[] populations = getInts(buf, settlements.length);
+            byte[] types = getBytes(buf, settlements.length);
+            double[] latitudes = getDoubles(buf, settlements.length);
+            double[] longitudes = getDoubles(buf, settlements.length);
+            roadNames = getInts(buf, roadCount);
+            classifications = getBytes(buf, roadCount);
+            lengths = getDoubles(buf, roadCount);
+            sources = getInts(buf, roadCount);
+            dests = getInts(buf, roadCount);
+
+            SettlementType[] settlementTypes = SettlementType.values();
+            for (int i = 0; i < settlements.length; i++) {
+                check(types[i] >= 0 && types[i] < settlementTypes.length, fileName, "settlement type");
+                settlements[i] = new Settlement(strings[i], populations[i], settlementTypes[types[i]]);
+                if (!Double.isNaN(latitudes[i]) && !Double.isNaN(longitudes[i])) {
+                    settlements[i].setLocation(latitudes[i], longitudes[i]);
+                }
+            }
+            for (int i = 0; i < roadCount; i++) {
+                check(roadNames[i] >= 0 && roadNames[i] < strings.length, fileName, "road name");
+                check(classifications[i] >= 0 && classifications[i] < Classification.values().length,
+                        fileName, "road classification");
+                check(sources[i] >= 0 && sources[i] < settlements.length
+                        && dests[i] >= 0 && dests[i] < settlements.length, fileName, "road end");
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException(fileName + " is shorter than its header says.");
+        }
+
+        // Everything has been checked, so the map can be filled.
+        Classification[] classes = Classification.values();
+        ArrayList<RoadRecord> roads = new ArrayList<>(lengths.length);
+        for (int i = 0; i < lengths.length; i++) {
+            roads.add(new RoadRecord(strings[roadNames[i]], classes[classifications[i]], lengths[i],
+                    strings[sources[i]], strings[dests[i]]));
+        }
+        ImportReport report = map.bulkImport(Arrays.stream(settlements), roads.stream());
+        for (ImportReport.Rejection r : report.getRejections()) {
+            System.err.println(fileName + ": " + r);
+        }
+        return generation;
+    }
+
+    private static void check(boolean valid, String fileName, String what) throws IOException {
+        if (!valid) {
+            throw new IOException(fileName + " has an invalid " + what + ".");
+        }
+    }
+
+    private static int[] getInts(ByteBuffer buf, int count) {
+        int[] ret = new int[count];
+        buf.asIntBuffer().get(ret);
+        buf.position(buf.position() + count * 4);
+        return ret;
+    }
+
+    private static double[] getDoubles(ByteBuffer buf, int count) {
+        double[] ret = new double[count];
+        buf.asDoubleBuffer().get(ret);
+        buf.position(buf.position() + count * 8);
+        return ret;
+    }
+
+    private static byte[] getBytes(ByteBuffer buf, int count) {
+        byte[] ret = new byte[count];
+        buf.get(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,41 @@
+package maps;
+
+
+/**
+ * A settlement found by Map.reachableWithin, with the cost of the cheapest route to it from the
+ * settlement the search started at.
+ */
+public class ReachableSettlement {
+    private final Settlement settlement;
+    private final double distance;
+
+    /**
+     * Constructor for a settlement reached by a search.
+     *
+     * @param settlement The settlement reached.
+     * @param distance   The cost of the cheapest route to it, in miles for the shortest routes.
+     */
+    public ReachableSettlement(Settlement settlement, double distance) {
+        this.settlement = settlement;
+        this.distance = distance;
+    }
+
+    /**
+     * @return Returns the settlement reached.
+     */
+    public Settlement getSettlement() {
+        return settlement;
+    }
+
+    /**
+     * @return Returns the cost of the cheapest route to the settlement, in miles for the shortest routes.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return settlement.getName() + " (" + distance + ")";
+    }
+}
@@ -1,3 +1,5 @@
+package maps;
+
 import java.io.PrintWriter;
 import java.util.Scanner;
 
@@ -14,6 +16,10 @@ public class Road {
     private Settlement sourceSettlement;
     private Settlement destinationSettlement;
     private double length;
+    // The map the road has been added to, told about length changes. Null if not on a map.
+    private Map map;
+    // The id given by the map, -1 if not on a map.
+    private int id = -1;
 
     /**
      * Constructor to build road between two settlements. This fulfills the class diagram
@@ -32,14 +38,27 @@ public class Road {
                 Settlement destination,
                 double len) {
 
+        this(nm, classifier, source, destination, len, true);
+    }
+
+    /**
+     * Constructor which can leave the road out of its settlements' lists of roads, for a bulk import
+     * which adds them all at the end.
+     *
+     * @param attach True to add the road to the settlements at each end.
+     */
+    Road(String nm, Classification classifier, Settlement source, Settlement destination, double len,
+         boolean attach) {
         // This is from worksheet 8. We now also have a road length
         name = nm;
         classification = classifier;
         sourceSettlement = source;
-        source.add(this);
         destinationSettlement = destination;
-        destination.add(this);
         length = len;
+        if (attach) {
+            source.add(this);
+            destination.add(this);
+        }
     }
 
     /**
@@ -52,6 +71,19 @@ public class Road {
     }
 
     public void setName(String nm) {
+        Map m = map;
+        if (m != null) {
+            // The map changes the name under its locks, so it is re-indexed in the same step.
+            m.renameRoad(this, nm);
+        } else {
+            name = nm;
+        }
+    }
+
+    /**
+     * Changes the name without telling the map, called by the map while it holds the road's locks.
+     */
+    void assignName(String nm) {
         name = nm;
     }
 
@@ -59,10 +91,67 @@ public class Road {
         return length;
     }
 
-    public void setLength(double len) {
+    /**
+     * Changes the length of the road.
+     *
+     * @param len The new length in miles.
+     * @throws IllegalArgumentException If the length isn't a finite number greater than 0.
+     */
+    public void setLength(double len) throws IllegalArgumentException {
+        checkLength(len);
+        Map m = map;
+        if (m != null) {
+            // The map changes the length under its locks, so it is published in the same step.
+            m.setRoadLength(this, len);
+        } else {
+            length = len;
+        }
+    }
+
+    /**
+     * Routing needs every length to be positive, and a length which isn't finite can't be saved as JSON.
+     *
+     * @param len A length in miles.
+     * @return Returns true if the length is a finite number greater than 0.
+     */
+    static boolean isValidLength(double len) {
+        return Double.isFinite(len) && len > 0;
+    }
+
+    static void checkLength(double len) throws IllegalArgumentException {
+        if (!isValidLength(len)) {
+            throw new IllegalArgumentException("Length must be a finite number greater than 0, not " + len);
+        }
+    }
+
+    /**
+     * Changes the length without telling the map, called by the map while it holds the road's locks.
+     */
+    void assignLength(double len) {
         length = len;
     }
 
+    /**
+     * Sets the map this road belongs to, called by the map when the road is added or removed.
+     *
+     * @param m     The map, or null if the road is no longer on a map.
+     * @param newId The id the map has given the road, -1 if it is no longer on a map.
+     */
+    void setMap(Map m, int newId) {
+        map = m;
+        id = newId;
+    }
+
+    /**
+     * The id of the road on its map. Ids are small and reused once a road is removed, so they can
+     * index arrays with one entry for each road on the map.
+     *
+     * @return Returns the id, or -1 if the road isn't on a map.
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * The road's class
      *
@@ -98,8 +187,8 @@ public class Road {
      * @return The other settlement connected to the road.
      */
     public Settlement getAlternateSettlement(Settlement s) {
-        boolean source = sourceSettlement.equals(s);
-        boolean dest = destinationSettlement.equals(s);
+        boolean source = sourceSettlement == s || sourceSettlement.equals(s);
+        boolean dest = !source && (destinationSettlement == s || destinationSettlement.equals(s));
 
         if (!(source || dest)) {
             return null;
@@ -122,6 +211,10 @@ public class Road {
         if (getClass() != obj.getClass())
             return false;
         Road other = (Road) obj;
+        // A road on a map is only equal to itself, see Settlement.equals.
+        if (map != null || other.map != null) {
+            return map == other.map && id == other.id;
+        }
         if (destinationSettlement == null) {
             if (other.destinationSettlement != null)
                 return false;
@@ -140,6 +233,10 @@ public class Road {
         return true;
     }
 
+    @Override
+    public int hashCode() {
+        return map != null ? id : name.hashCode();
+    }
 
     /**
      * Some useful info about the state of this object. Notice how this also
@@ -0,0 +1,76 @@
+package maps;
+
+/**
+ * The details of a road which hasn't been added to a map yet. The settlements at each end are only
+ * named, as they are looked up on the map when the road is added.
+ */
+public class RoadRecord {
+
+    private final String name;
+    private final Classification classification;
+    private final double length;
+    private final String source;
+    private final String dest;
+    // The line of the file the road was read from, 0 if it wasn't read from a file.
+    private final int line;
+
+    /**
+     * Constructor for a road which wasn't read from a file.
+     *
+     * @param name           The road name.
+     * @param classification The class of road.
+     * @param length         The length of the road in miles.
+     * @param source         The name of the source settlement.
+     * @param dest           The name of the destination settlement.
+     */
+    public RoadRecord(String name, Classification classification, double length, String source, String dest) {
+        this(name, classification, length, source, dest, 0);
+    }
+
+    /**
+     * Constructor for a road read from a line of a file.
+     *
+     * @param name           The road name.
+     * @param classification The class of road.
+     * @param length         The length of the road in miles.
+     * @param source         The name of the source settlement.
+     * @param dest           The name of the destination settlement.
+     * @param line           The line of the file the road was read from.
+     */
+    public RoadRecord(String name, Classification classification, double length, String source, String dest,
+                      int line) {
+        this.name = name;
+        this.classification = classification;
+        this.length = length;
+        this.source = source;
+        this.dest = dest;
+        this.line = line;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Classification getClassification() {
+        return classification;
+    }
+
+    public double getLength() {
+        return length;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getDestination() {
+        return dest;
+    }
+
+    /**
+     * @return Returns the line of the file the road was read from, 0 if it wasn't read from a file.
+     */
+    public int getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,33 @@
+package maps;
+
+/**
+ * What JMX shows of one routing engine: how many route queries it has answered, how long they took
+ * and how much work they did. Times are in microseconds, and the percentiles are accurate to about 6%.
+ */
+public interface RoutingEngineMXBean {
+
+    long getQueryCount();
+
+    long getNoRouteCount();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    double getMaxMicros();
+
+    double getMeanSettled();
+
+    double getMeanRelaxed();
+
+    double getMeanHeapOperations();
+
+    /**
+     * Forgets every query recorded so far.
+     */
+    void reset();
+}
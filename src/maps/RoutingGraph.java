@@ -0,0 +1,575 @@
+package maps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable copy of the Map used by the routing engines, in compressed sparse row (CSR) form.
+ * Settlements are numbered by their map ids, so a number below size() may have no settlement, and
+ * the roads leaving settlement u are the edges edgeStart(u) to edgeEnd(u) - 1. Every road appears
+ * twice, once from each end, as roads can be driven in both directions.
+ * <p>
+ * The edge arrays are shared by a line of graphs, each made from the one before by next(). A new
+ * graph only writes out again the rows of the settlements whose roads have changed, appending them
+ * after the edges of the graph it was made from, and shares every other row. A graph never reads
+ * past its own edges, so appending never changes what an older graph sees. The start and end of each
+ * row are held in fixed size chunks, and only the chunks with a changed row are copied. Once the
+ * rows left behind outweigh the edges in use, or a change touches a large part of the map, the
+ * graph is built again from scratch.
+ */
+public class RoutingGraph {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // A change to more than one in this many of the roads builds the graph from scratch.
+    private static final int REBUILD_FRACTION = 8;
+    // Edges left behind by changed rows which are always tolerated, so small maps aren't rebuilt often.
+    private static final int GARBAGE_SLACK = 4096;
+
+    // These arrays are read directly by the routing engines' inner loops and must never be written to
+    // below edgeLimit. Later graphs may append to them past it.
+    final int[] targets;
+    final double[] weights;
+    private final int[] sources;
+    private final Road[] roads;
+    private final int[] roadIds;
+    private final EdgeStore store;
+    private final int edgeLimit;
+    // rows[u >>> CHUNK_BITS][u & CHUNK_MASK] holds the first edge of u in the high half and the end in the low half.
+    private final long[][] rows;
+    private final int edgeCount;
+
+    private final GraphSnapshot snapshot;
+    private final int size;
+    private final int settlementCount;
+    // the number of settlements without a location
+    private final int unlocated;
+    private final double milesPerDistance;
+    // Set once a graph has been made from this one, as only one graph may append after its edges.
+    private final AtomicBoolean extended = new AtomicBoolean();
+    // The weight of every edge for each cost profile by ordinal, looked up the first time it is asked for.
+    private final AtomicReferenceArray<double[]> profileWeights =
+            new AtomicReferenceArray<>(CostProfile.values().length);
+
+    /**
+     * The edges of a line of graphs. Rows are only ever appended, under the store's lock, and the
+     * arrays are replaced by longer copies when they are full.
+     */
+    private static final class EdgeStore {
+        private int[] targets;
+        private int[] sources;
+        private double[] lengths;
+        private Road[] roads;
+        // the map id of the road of each edge, as the road's own id changes when it is removed
+        private int[] roadIds;
+        // The weights for each cost profile by ordinal, null until a query asks for them.
+        private final double[][] profiles = new double[CostProfile.values().length][];
+        private int size;
+
+        EdgeStore(int capacity) {
+            targets = new int[capacity];
+            sources = new int[capacity];
+            lengths = new double[capacity];
+            roads = new Road[capacity];
+            roadIds = new int[capacity];
+        }
+
+        void ensureCapacity(int needed) {
+            if (needed <= targets.length) {
+                return;
+            }
+            int capacity = Math.max(needed, targets.length * 2);
+            targets = Arrays.copyOf(targets, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            roads = Arrays.copyOf(roads, capacity);
+            roadIds = Arrays.copyOf(roadIds, capacity);
+            for (int p = 0; p < profiles.length; p++) {
+                if (profiles[p] != null) {
+                    profiles[p] = Arrays.copyOf(profiles[p], capacity);
+                }
+            }
+        }
+
+        void append(int source, int target, double length, Road road, int roadId) {
+            int e = size++;
+            targets[e] = target;
+            sources[e] = source;
+            lengths[e] = length;
+            roads[e] = road;
+            roadIds[e] = roadId;
+            for (CostProfile profile : CostProfile.values()) {
+                if (profiles[profile.ordinal()] != null) {
+                    profiles[profile.ordinal()][e] = length * profile.getCostPerMile(road.getClassification());
+                }
+            }
+        }
+
+        synchronized double[] profileWeights(CostProfile profile) {
+            double[] ret = profiles[profile.ordinal()];
+            if (ret == null) {
+                ret = new double[targets.length];
+                for (int e = 0; e < size; e++) {
+                    ret[e] = lengths[e] * profile.getCostPerMile(roads[e].getClassification());
+                }
+                profiles[profile.ordinal()] = ret;
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Builds the graph from a snapshot of the map, from scratch.
+     *
+     * @param snapshot The snapshot of the map.
+     */
+    public RoutingGraph(GraphSnapshot snapshot) {
+        this.snapshot = snapshot;
+        int limit = snapshot.getSettlementIdLimit();
+        int n = 0;
+        int count = 0;
+        int noLocation = 0;
+        for (int id = 0; id < limit; id++) {
+            GraphSnapshot.SettlementState s = snapshot.getSettlement(id);
+            if (s != null) {
+                n = id + 1;
+                count++;
+                if (Double.isNaN(s.getLatitude()) || Double.isNaN(s.getLongitude())) {
+                    noLocation++;
+                }
+            }
+        }
+        size = n;
+        settlementCount = count;
+        unlocated = noLocation;
+
+        // First pass: count the degree of each settlement.
+        int[] offsets = new int[n + 1];
+        for (int r = 0; r < snapshot.getRoadIdLimit(); r++) {
+            GraphSnapshot.RoadState road = snapshot.getRoad(r);
+            if (usable(road, snapshot)) {
+                offsets[road.getSource() + 1]++;
+                offsets[road.getDestination() + 1]++;
+            }
+        }
+        for (int u = 0; u < n; u++) {
+            offsets[u + 1] += offsets[u];
+        }
+
+        // Second pass: place each road in the rows of both of its settlements.
+        store = new EdgeStore(offsets[n] + GARBAGE_SLACK);
+        store.size = offsets[n];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (int r = 0; r < snapshot.getRoadIdLimit(); r++) {
+            GraphSnapshot.RoadState road = snapshot.getRoad(r);
+            if (!usable(road, snapshot)) {
+                continue;
+            }
+            int from = road.getSource();
+            int to = road.getDestination();
+            place(next[from]++, from, to, road, r);
+            place(next[to]++, to, from, road, r);
+        }
+        rows = new long[chunks(n)][CHUNK_SIZE];
+        for (int u = 0; u < n; u++) {
+            if (offsets[u + 1] > offsets[u]) {
+                rows[u >>> CHUNK_BITS][u & CHUNK_MASK] = ((long) offsets[u] << 32) | offsets[u + 1];
+            }
+        }
+        edgeCount = offsets[n];
+        edgeLimit = offsets[n];
+        targets = store.targets;
+        sources = store.sources;
+        weights = store.lengths;
+        roads = store.roads;
+        roadIds = store.roadIds;
+        milesPerDistance = unlocated == 0 ? shortestRatio() : 0;
+    }
+
+    private RoutingGraph(GraphSnapshot snapshot, EdgeStore store, long[][] rows, int edgeLimit, int edgeCount,
+                         int size, int settlementCount, int unlocated, double milesPerDistance) {
+        this.snapshot = snapshot;
+        this.store = store;
+        this.rows = rows;
+        this.edgeLimit = edgeLimit;
+        this.edgeCount = edgeCount;
+        this.size = size;
+        this.settlementCount = settlementCount;
+        this.unlocated = unlocated;
+        this.milesPerDistance = milesPerDistance;
+        targets = store.targets;
+        sources = store.sources;
+        weights = store.lengths;
+        roads = store.roads;
+        roadIds = store.roadIds;
+    }
+
+    /**
+     * @return Returns true if a road is in the snapshot and joins two different settlements in it.
+     * Roads looping back to the same place never help a route.
+     */
+    private static boolean usable(GraphSnapshot.RoadState road, GraphSnapshot snapshot) {
+        return road != null && road.getSource() != road.getDestination()
+                && snapshot.getSettlement(road.getSource()) != null
+                && snapshot.getSettlement(road.getDestination()) != null;
+    }
+
+    private void place(int e, int from, int to, GraphSnapshot.RoadState road, int roadId) {
+        store.targets[e] = to;
+        store.sources[e] = from;
+        store.lengths[e] = road.getLength();
+        store.roads[e] = road.getRoad();
+        store.roadIds[e] = roadId;
+    }
+
+    private static int chunks(int n) {
+        return (n + CHUNK_MASK) >>> CHUNK_BITS;
+    }
+
+    /**
+     * Makes the graph for a later snapshot of the map from this one. Only the rows of the settlements
+     * whose roads have changed are written, unless the graph has to be built from scratch.
+     *
+     * @param next                The later snapshot, made by editing the snapshot of this graph.
+     * @param changedSettlements  The ids of the settlements added, removed or moved by the edit.
+     * @param changedRoads        The ids of the roads added, removed or changed by the edit.
+     * @return Returns the graph of the later snapshot.
+     */
+    RoutingGraph next(GraphSnapshot next, int[] changedSettlements, int[] changedRoads) {
+        TreeSet<Integer> settlementsChanged = new TreeSet<>();
+        for (int v : changedSettlements) {
+            settlementsChanged.add(v);
+        }
+        int newUnlocated = unlocated;
+        int newCount = settlementCount;
+        int newSize = size;
+        for (int v : settlementsChanged) {
+            GraphSnapshot.SettlementState before = snapshot.getSettlement(v);
+            GraphSnapshot.SettlementState after = next.getSettlement(v);
+            newCount += (after == null ? 0 : 1) - (before == null ? 0 : 1);
+            newUnlocated += (unlocated(after) ? 1 : 0) - (unlocated(before) ? 1 : 0);
+            if (after != null) {
+                newSize = Math.max(newSize, v + 1);
+            }
+        }
+        // The roads whose edges are written again: those changed, and every road of a changed settlement.
+        TreeSet<Integer> changed = new TreeSet<>();
+        for (int r : changedRoads) {
+            changed.add(r);
+        }
+        for (int v : settlementsChanged) {
+            for (int e = edgeStart(v, size); e < edgeEnd(v, size); e++) {
+                changed.add(roadIds[e]);
+            }
+        }
+        // The last settlement without a location getting one turns the estimate on, which needs every
+        // road, and a change to much of the map or too many rows left behind is cheaper built again.
+        boolean rebuild = (unlocated != 0 && newUnlocated == 0)
+                || (long) changed.size() * REBUILD_FRACTION > edgeCount / 2 + GARBAGE_SLACK
+                || edgeLimit - edgeCount > edgeCount + GARBAGE_SLACK;
+        if (rebuild || !extended.compareAndSet(false, true)) {
+            return new RoutingGraph(next);
+        }
+
+        // The settlements whose rows change, and the changed roads each of them now has.
+        TreeSet<Integer> affected = new TreeSet<>(settlementsChanged);
+        HashMap<Integer, ArrayList<Integer>> added = new HashMap<>();
+        for (int r : changed) {
+            GraphSnapshot.RoadState before = snapshot.getRoad(r);
+            if (before != null) {
+                affected.add(before.getSource());
+                affected.add(before.getDestination());
+            }
+            GraphSnapshot.RoadState after = next.getRoad(r);
+            if (usable(after, next)) {
+                affected.add(after.getSource());
+                affected.add(after.getDestination());
+                added.computeIfAbsent(after.getSource(), k -> new ArrayList<>()).add(r);
+                added.computeIfAbsent(after.getDestination(), k -> new ArrayList<>()).add(r);
+            }
+        }
+
+        long[][] newRows = Arrays.copyOf(rows, chunks(newSize));
+        boolean[] copied = new boolean[newRows.length];
+        int newEdgeCount = edgeCount;
+        // Removing a road can only raise the smallest ratio, so it is kept and only lowered by the rows
+        // written out again. The estimate may then be a little weaker than it could be, but never too high.
+        double ratio = milesPerDistance == 0 ? Double.POSITIVE_INFINITY : milesPerDistance;
+        int newLimit;
+        synchronized (store) {
+            for (int u : affected) {
+                int c = u >>> CHUNK_BITS;
+                if (!copied[c]) {
+                    newRows[c] = newRows[c] == null ? new long[CHUNK_SIZE] : newRows[c].clone();
+                    copied[c] = true;
+                }
+                int oldStart = edgeStart(u, size);
+                int oldEnd = edgeEnd(u, size);
+                int start = store.size;
+                if (next.getSettlement(u) != null) {
+                    ArrayList<Integer> fresh = added.getOrDefault(u, new ArrayList<>());
+                    store.ensureCapacity(store.size + oldEnd - oldStart + fresh.size());
+                    for (int e = oldStart; e < oldEnd; e++) {
+                        if (!changed.contains(roadIds[e])) {
+                            store.append(u, targets[e], weights[e], roads[e], roadIds[e]);
+                        }
+                    }
+                    for (int r : fresh) {
+                        GraphSnapshot.RoadState road = next.getRoad(r);
+                        int other = road.getSource() == u ? road.getDestination() : road.getSource();
+                        store.append(u, other, road.getLength(), road.getRoad(), r);
+                    }
+                }
+                newRows[c][u & CHUNK_MASK] = store.size == start ? 0 : ((long) start << 32) | store.size;
+                newEdgeCount += store.size - start - (oldEnd - oldStart);
+                if (newUnlocated == 0) {
+                    for (int e = start; e < store.size; e++) {
+                        ratio = Math.min(ratio, ratio(next, u, store.targets[e], store.lengths[e]));
+                    }
+                }
+            }
+            newLimit = store.size;
+        }
+        if (newUnlocated != 0 || ratio == Double.POSITIVE_INFINITY) {
+            ratio = 0;
+        }
+        return new RoutingGraph(next, store, newRows, newLimit, newEdgeCount, newSize, newCount, newUnlocated, ratio);
+    }
+
+    private int edgeStart(int u, int limit) {
+        return u < limit ? edgeStart(u) : 0;
+    }
+
+    private int edgeEnd(int u, int limit) {
+        return u < limit ? edgeEnd(u) : 0;
+    }
+
+    private static boolean unlocated(GraphSnapshot.SettlementState s) {
+        return s != null && (Double.isNaN(s.getLatitude()) || Double.isNaN(s.getLongitude()));
+    }
+
+    private static double ratio(GraphSnapshot snapshot, int from, int to, double length) {
+        GraphSnapshot.SettlementState a = snapshot.getSettlement(from);
+        GraphSnapshot.SettlementState b = snapshot.getSettlement(to);
+        double straight = Settlement.greatCircleMiles(a.getLatitude(), a.getLongitude(), b.getLatitude(),
+                b.getLongitude());
+        return straight > 0 ? length / straight : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Finds the smallest ratio of road length to the straight line distance between its settlements.
+     * Multiplying a straight line distance by this never overestimates the miles by road.
+     */
+    private double shortestRatio() {
+        double ratio = Double.POSITIVE_INFINITY;
+        for (int e = 0; e < edgeLimit; e++) {
+            ratio = Math.min(ratio, ratio(snapshot, sources[e], targets[e], weights[e]));
+        }
+        return ratio == Double.POSITIVE_INFINITY ? 0 : ratio;
+    }
+
+    /**
+     * @return Returns one more than the largest settlement number in the graph. Arrays indexed by
+     * settlement must be this long.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Returns the length to give the arrays of a search on this graph, with room for the
+     * settlements added by a few later versions, so the search can move on to them.
+     */
+    int capacity() {
+        return size + (size >> 4) + 64;
+    }
+
+    /**
+     * @return Returns the number of settlements in the graph.
+     */
+    public int getSettlementCount() {
+        return settlementCount;
+    }
+
+    /**
+     * @return Returns the number of edges in the graph, two for each road.
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return Returns the version of the map snapshot this graph was built from.
+     */
+    public int getVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * @return Returns true if every settlement in the graph has a location.
+     */
+    public boolean hasLocations() {
+        return unlocated == 0;
+    }
+
+    /**
+     * @return Returns the smallest miles by road per mile in a straight line of any road,
+     * or 0 if not every settlement has a location.
+     */
+    public double getMilesPerDistance() {
+        return milesPerDistance;
+    }
+
+    /**
+     * @param u The number of a settlement.
+     * @return Returns the first edge leaving the settlement.
+     */
+    int edgeStart(int u) {
+        long[] chunk = rows[u >>> CHUNK_BITS];
+        return chunk == null ? 0 : (int) (chunk[u & CHUNK_MASK] >>> 32);
+    }
+
+    /**
+     * @param u The number of a settlement.
+     * @return Returns one more than the last edge leaving the settlement.
+     */
+    int edgeEnd(int u) {
+        long[] chunk = rows[u >>> CHUNK_BITS];
+        return chunk == null ? 0 : (int) chunk[u & CHUNK_MASK];
+    }
+
+    /**
+     * @param v The number of a settlement in the graph.
+     * @return Returns its latitude in degrees, NaN if it has no location.
+     */
+    double latitude(int v) {
+        return snapshot.getSettlement(v).getLatitude();
+    }
+
+    /**
+     * @param v The number of a settlement in the graph.
+     * @return Returns its longitude in degrees, NaN if it has no location.
+     */
+    double longitude(int v) {
+        return snapshot.getSettlement(v).getLongitude();
+    }
+
+    /**
+     * Gets the weight of every edge for a cost profile, in the same order as the weights array. The
+     * weights for SHORTEST are the lengths themselves, the others are worked out from them the first
+     * time any graph sharing these edges asks for them, and kept up to date as rows are appended.
+     *
+     * @param profile The cost profile.
+     * @return Returns the weights, which must never be written to.
+     */
+    double[] weights(CostProfile profile) {
+        if (profile == CostProfile.SHORTEST) {
+            return weights;
+        }
+        double[] ret = profileWeights.get(profile.ordinal());
+        if (ret == null) {
+            ret = store.profileWeights(profile);
+            profileWeights.compareAndSet(profile.ordinal(), null, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Works out a hash of the settlement names and of the ends and length of every road, which does not
+     * depend on the order they were added in. Two graphs with the same fingerprint can share
+     * precomputed routing data saved to a file.
+     *
+     * @return Returns the fingerprint of the graph.
+     */
+    public long fingerprint() {
+        long hash = settlementCount * 31L + edgeCount;
+        for (int u = 0; u < size; u++) {
+            Settlement s = getSettlement(u);
+            if (s == null) {
+                continue;
+            }
+            hash += mix(s.getName().hashCode());
+            long from = s.getName().hashCode() * 961L;
+            for (int e = edgeStart(u); e < edgeEnd(u); e++) {
+                hash += mix(from + getSettlement(targets[e]).getName().hashCode() * 31L + Double.hashCode(weights[e]));
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long x) {
+        x *= 0x9E3779B97F4A7C15L;
+        return x ^ (x >>> 29);
+    }
+
+    /**
+     * @param s The settlement to look up.
+     * @return Returns the number of the settlement, or -1 if it isn't in the graph.
+     */
+    public int getId(Settlement s) {
+        int id = s.getId();
+        if (id < 0 || id >= size) {
+            return -1;
+        }
+        // The map id may have been reused by a settlement added after the graph was built.
+        GraphSnapshot.SettlementState state = snapshot.getSettlement(id);
+        return state != null && state.getSettlement() == s ? id : -1;
+    }
+
+    /**
+     * @param id The number of a settlement.
+     * @return Returns the settlement with the given number, or null if there isn't one.
+     */
+    public Settlement getSettlement(int id) {
+        GraphSnapshot.SettlementState state = snapshot.getSettlement(id);
+        return state == null ? null : state.getSettlement();
+    }
+
+    /**
+     * @param edge An edge of the graph.
+     * @return Returns the road the edge was built from.
+     */
+    public Road getRoad(int edge) {
+        return roads[edge];
+    }
+
+    /**
+     * Walks a shortest route tree back from the destination and returns the route in form of an
+     * ArrayList of type Road.
+     *
+     * @param prev   The edge used to reach each settlement, -1 where there isn't one.
+     * @param source The id of the settlement at the root of the tree.
+     * @param dest   The id of the destination to start backtracking from.
+     * @return Returns an ArrayList of type Road storing the Roads to take for the desired route,
+     * or null if the tree doesn't reach the destination.
+     */
+    public ArrayList<Road> routeFromTree(int[] prev, int source, int dest) {
+        ArrayList<Road> ret = new ArrayList<>();
+        // We have to work backwards from the destination as the tree only points towards the source.
+        while (dest != source) {
+            int e = prev[dest];
+            if (e == -1) {
+                return null;
+            }
+            ret.add(getRoad(e));
+            dest = edgeSource(e);
+        }
+        // This puts the roads in appropriate order for the route.
+        Collections.reverse(ret);
+        return ret;
+    }
+
+    /**
+     * @param edge An edge of the graph.
+     * @return Returns the number of the settlement at the start of the edge.
+     */
+    public int edgeSource(int edge) {
+        return sources[edge];
+    }
+}
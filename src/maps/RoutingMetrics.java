@@ -0,0 +1,271 @@
+package maps;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a map's route queries, loads and saves do, for each routing engine: the latency of
+ * every query, and how many settlements it settled, roads it looked along and heap operations it
+ * made. Recording a query only adds to counters which any number of threads can add to at once, so
+ * it neither locks nor allocates. Once registered the counts can be read over JMX, as
+ * <pre>
+ *   maps:type=RoutingEngine,map=NAME,engine=ASTAR   (one for each RoutingMode)
+ *   maps:type=Persistence,map=NAME
+ * </pre>
+ */
+public class RoutingMetrics {
+
+    /**
+     * The counts for one routing engine.
+     */
+    public static class Engine implements RoutingEngineMXBean {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder noRoute = new LongAdder();
+        private final LongAdder settled = new LongAdder();
+        private final LongAdder relaxed = new LongAdder();
+        private final LongAdder heapOperations = new LongAdder();
+
+        private void record(long nanos, int settled, int relaxed, int heapOperations, boolean found) {
+            latency.record(nanos);
+            this.settled.add(settled);
+            this.relaxed.add(relaxed);
+            this.heapOperations.add(heapOperations);
+            if (!found) {
+                noRoute.increment();
+            }
+        }
+
+        /**
+         * @return Returns the latencies of the queries recorded.
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getQueryCount() {
+            return latency.getCount();
+        }
+
+        public long getNoRouteCount() {
+            return noRoute.sum();
+        }
+
+        public double getMeanMicros() {
+            return latency.getMeanMicros();
+        }
+
+        public long getP50Micros() {
+            return latency.getPercentileMicros(0.5);
+        }
+
+        public long getP99Micros() {
+            return latency.getPercentileMicros(0.99);
+        }
+
+        public long getP999Micros() {
+            return latency.getPercentileMicros(0.999);
+        }
+
+        public double getMaxMicros() {
+            return latency.getMaxMicros();
+        }
+
+        public double getMeanSettled() {
+            return perQuery(settled);
+        }
+
+        public double getMeanRelaxed() {
+            return perQuery(relaxed);
+        }
+
+        public double getMeanHeapOperations() {
+            return perQuery(heapOperations);
+        }
+
+        public void reset() {
+            latency.reset();
+            noRoute.reset();
+            settled.reset();
+            relaxed.reset();
+            heapOperations.reset();
+        }
+
+        private double perQuery(LongAdder total) {
+            long queries = latency.getCount();
+            return queries == 0 ? 0 : total.sum() / (double) queries;
+        }
+    }
+
+    /**
+     * The counts for loading and saving.
+     */
+    public static class Persistence implements MapPersistenceMXBean {
+        private final AtomicLong loads = new AtomicLong();
+        private final AtomicLong lastLoadMillis = new AtomicLong();
+        private final AtomicLong totalLoadMillis = new AtomicLong();
+        private final AtomicLong lastLoadBytes = new AtomicLong();
+        private final AtomicLong totalLoadBytes = new AtomicLong();
+        private final AtomicLong saves = new AtomicLong();
+        private final AtomicLong lastSaveMillis = new AtomicLong();
+        private final AtomicLong totalSaveMillis = new AtomicLong();
+        private final AtomicLong lastSaveBytes = new AtomicLong();
+        private final AtomicLong totalSaveBytes = new AtomicLong();
+
+        public long getLoadCount() {
+            return loads.get();
+        }
+
+        public long getLastLoadMillis() {
+            return lastLoadMillis.get();
+        }
+
+        public long getTotalLoadMillis() {
+            return totalLoadMillis.get();
+        }
+
+        public long getLastLoadBytes() {
+            return lastLoadBytes.get();
+        }
+
+        public long getTotalLoadBytes() {
+            return totalLoadBytes.get();
+        }
+
+        public long getSaveCount() {
+            return saves.get();
+        }
+
+        public long getLastSaveMillis() {
+            return lastSaveMillis.get();
+        }
+
+        public long getTotalSaveMillis() {
+            return totalSaveMillis.get();
+        }
+
+        public long getLastSaveBytes() {
+            return lastSaveBytes.get();
+        }
+
+        public long getTotalSaveBytes() {
+            return totalSaveBytes.get();
+        }
+    }
+
+    private final Engine[] engines;
+    private final Persistence persistence = new Persistence();
+    // The names registered with JMX, so they can be unregistered.
+    private final ArrayList<ObjectName> registered = new ArrayList<>();
+
+    /**
+     * Constructor for metrics with nothing recorded.
+     */
+    public RoutingMetrics() {
+        engines = new Engine[RoutingMode.values().length];
+        for (int i = 0; i < engines.length; i++) {
+            engines[i] = new Engine();
+        }
+    }
+
+    /**
+     * Records one route query.
+     *
+     * @param mode           The engine which answered it.
+     * @param nanos          How long it took.
+     * @param settled        The settlements it settled.
+     * @param relaxed        The roads it looked along.
+     * @param heapOperations The heap operations it made.
+     * @param found          Whether a route was found.
+     */
+    public void recordQuery(RoutingMode mode, long nanos, int settled, int relaxed, int heapOperations,
+                            boolean found) {
+        engines[mode.ordinal()].record(nanos, settled, relaxed, heapOperations, found);
+    }
+
+    /**
+     * Records a load of the map.
+     *
+     * @param nanos How long it took.
+     * @param bytes The size of the files read.
+     */
+    public void recordLoad(long nanos, long bytes) {
+        Persistence p = persistence;
+        p.loads.incrementAndGet();
+        p.lastLoadMillis.set(nanos / 1000000);
+        p.totalLoadMillis.addAndGet(nanos / 1000000);
+        p.lastLoadBytes.set(bytes);
+        p.totalLoadBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Records a save of the map.
+     *
+     * @param nanos How long it took.
+     * @param bytes The size of the files written.
+     */
+    public void recordSave(long nanos, long bytes) {
+        Persistence p = persistence;
+        p.saves.incrementAndGet();
+        p.lastSaveMillis.set(nanos / 1000000);
+        p.totalSaveMillis.addAndGet(nanos / 1000000);
+        p.lastSaveBytes.set(bytes);
+        p.totalSaveBytes.addAndGet(bytes);
+    }
+
+    /**
+     * @param mode A routing engine.
+     * @return Returns the counts for that engine.
+     */
+    public Engine getEngine(RoutingMode mode) {
+        return engines[mode.ordinal()];
+    }
+
+    /**
+     * @return Returns the counts for loading and saving.
+     */
+    public Persistence getPersistence() {
+        return persistence;
+    }
+
+    /**
+     * Makes the counts readable over JMX, from the platform MBean server. A failure is reported
+     * rather than thrown, as the map works just the same without it.
+     *
+     * @param mapName The name to tell this map apart from others in the same JVM.
+     */
+    public synchronized void register(String mapName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (RoutingMode mode : RoutingMode.values()) {
+                ObjectName name = new ObjectName("maps:type=RoutingEngine,map=" + mapName + ",engine=" + mode);
+                server.registerMBean(engines[mode.ordinal()], name);
+                registered.add(name);
+            }
+            ObjectName name = new ObjectName("maps:type=Persistence,map=" + mapName);
+            server.registerMBean(persistence, name);
+            registered.add(name);
+        } catch (JMException e) {
+            System.err.println("Metrics not available over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the counts from JMX again.
+     */
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+        registered.clear();
+    }
+}
@@ -0,0 +1,9 @@
+package maps;
+
+
+/**
+ * The algorithms Map.findRoute can use to find a route.
+ */
+public enum RoutingMode {
+    DIJKSTRA, BIDIRECTIONAL, ASTAR, ALT, CONTRACTION_HIERARCHY, HUB_LABELS
+}
@@ -0,0 +1,465 @@
+package maps;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves a map over HTTP on the local machine, so other programs can use it without scripting the
+ * menu. Every answer is a JSON object, and parameters are given in the query string:
+ * <pre>
+ *   GET    /route?from=A&amp;to=B[&amp;mode=ASTAR][&amp;profile=FASTEST]
+ *                                                 the roads of the least cost route, its length and cost
+ *   GET    /distance?from=A&amp;to=B                 the length of the shortest route
+ *   GET    /reachable?from=A&amp;radius=N[&amp;profile=FASTEST][&amp;limit=K]
+ *                                                 the settlements within a cost of A, nearest first
+ *   GET    /settlement?name=A                     a settlement and its roads
+ *   POST   /settlement?name=A&amp;population=N&amp;type=TOWN
+ *   DELETE /settlement?name=A
+ *   POST   /road?name=R&amp;classification=A&amp;from=A&amp;to=B&amp;length=L
+ *   DELETE /road?from=A&amp;to=B
+ *   GET    /metrics                               request latencies for each of the above
+ * </pre>
+ * Requests are handled on virtual threads when the JVM has them and on a pool of ordinary threads
+ * otherwise. Queries read the map's snapshot and changes take its locks, so requests don't have to
+ * wait for each other.
+ * <p>
+ * Usage: java maps.RoutingService [port] [mapDirectory] (defaults to 8080 and the working directory).
+ * <p>
+ * The headers and body of an answer are written separately, and unless the JVM is started with
+ * -Dsun.net.httpserver.nodelay=true the body waits for the client to acknowledge the headers, which
+ * adds 40ms to every request. main sets it when it isn't given; a program which makes its own
+ * service has to pass it on the command line.
+ */
+public class RoutingService {
+
+    private static final int POOL_THREADS = 64;
+
+    private final Map map;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // The handlers of each path by method, and their latencies by "METHOD /path" in the order they
+    // were registered. Both are only changed by the constructor.
+    private final HashMap<String, HashMap<String, Handler>> handlersByPath = new HashMap<>();
+    private final LinkedHashMap<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+
+    /**
+     * Thrown by a handler to send an error to the client rather than an answer.
+     */
+    private static class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Answers one kind of request.
+     */
+    private interface Handler {
+        /**
+         * @param params The query string parameters.
+         * @return Returns the JSON answer.
+         */
+        String handle(HashMap<String, String> params) throws RequestException;
+    }
+
+    /**
+     * Constructor for a service which is not yet started.
+     *
+     * @param map  The map to serve.
+     * @param port The port to listen on, 0 for any free port.
+     * @throws IOException If the port can't be opened.
+     */
+    public RoutingService(Map map, int port) throws IOException {
+        this.map = map;
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        executor = newExecutor();
+        server.setExecutor(executor);
+        route("GET", "/route", this::route);
+        route("GET", "/distance", this::distance);
+        route("GET", "/reachable", this::reachable);
+        route("GET", "/settlement", this::settlement);
+        route("POST", "/settlement", this::addSettlement);
+        route("DELETE", "/settlement", this::removeSettlement);
+        route("POST", "/road", this::addRoad);
+        route("DELETE", "/road", this::removeRoad);
+        route("GET", "/metrics", params -> metrics());
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops answering requests, waiting up to a second for those already being answered.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * @return Returns the port the service is listening on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return Returns true if requests are handled on virtual threads.
+     */
+    public boolean usesVirtualThreads() {
+        return !(executor instanceof java.util.concurrent.ThreadPoolExecutor);
+    }
+
+    /**
+     * Makes a virtual thread for each request if this JVM can, which is looked up by name so the
+     * service still runs on JVMs from before virtual threads.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(POOL_THREADS);
+        }
+    }
+
+    /**
+     * Registers a handler for a method on a path. Every method on one path shares a context.
+     */
+    private void route(String method, String path, Handler handler) {
+        latencies.put(method + " " + path, new LatencyHistogram());
+        if (!handlersByPath.containsKey(path)) {
+            handlersByPath.put(path, new HashMap<>());
+            server.createContext(path, exchange -> dispatch(path, exchange));
+        }
+        handlersByPath.get(path).put(method, handler);
+    }
+
+    /**
+     * Answers a request with the handler for its method, and records how long it took.
+     */
+    private void dispatch(String path, HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String method = exchange.getRequestMethod();
+        Handler handler = handlersByPath.get(path).get(method);
+        int status = 200;
+        String body;
+        try {
+            if (handler == null) {
+                throw new RequestException(405, method + " is not allowed on " + path);
+            }
+            body = handler.handle(parameters(exchange));
+        } catch (RequestException e) {
+            status = e.status;
+            body = "{\"error\":" + quote(e.getMessage()) + "}";
+        } catch (RuntimeException e) {
+            status = 500;
+            body = "{\"error\":" + quote(String.valueOf(e)) + "}";
+        }
+        send(exchange, status, body);
+        LatencyHistogram latency = latencies.get(method + " " + path);
+        if (latency != null) {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static HashMap<String, String> parameters(HttpExchange exchange) {
+        HashMap<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    /* -------------------_Handlers_----------------------------- */
+
+    private String route(HashMap<String, String> params) throws RequestException {
+        Settlement from = settlementParam(params, "from");
+        Settlement to = settlementParam(params, "to");
+        RoutingMode mode;
+        try {
+            mode = RoutingMode.valueOf(params.getOrDefault("mode", "DIJKSTRA").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Unknown mode " + params.get("mode"));
+        }
+        CostProfile profile = profileParam(params);
+        ArrayList<Road> route;
+        try {
+            route = map.findRoute(from, to, mode, profile);
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+        if (route == null) {
+            throw new RequestException(404, "No route from " + from.getName() + " to " + to.getName());
+        }
+        double miles = 0;
+        double cost = 0;
+        StringBuilder roads = new StringBuilder("[");
+        for (int i = 0; i < route.size(); i++) {
+            Road r = route.get(i);
+            miles += r.getLength();
+            cost += profile.cost(r);
+            if (i > 0) {
+                roads.append(',');
+            }
+            roads.append("{\"name\":").append(quote(r.getName())).append(",\"length\":").append(r.getLength())
+                    .append('}');
+        }
+        roads.append(']');
+        return "{\"from\":" + quote(from.getName()) + ",\"to\":" + quote(to.getName()) + ",\"miles\":" + miles
+                + ",\"profile\":" + quote(profile.toString()) + ",\"cost\":" + cost + ",\"roads\":" + roads + "}";
+    }
+
+    private String distance(HashMap<String, String> params) throws RequestException {
+        Settlement from = settlementParam(params, "from");
+        Settlement to = settlementParam(params, "to");
+        double miles = map.distance(from, to);
+        if (miles == Double.POSITIVE_INFINITY) {
+            throw new RequestException(404, "No route from " + from.getName() + " to " + to.getName());
+        }
+        return "{\"from\":" + quote(from.getName()) + ",\"to\":" + quote(to.getName()) + ",\"miles\":" + miles + "}";
+    }
+
+    private String reachable(HashMap<String, String> params) throws RequestException {
+        Settlement from = settlementParam(params, "from");
+        CostProfile profile = profileParam(params);
+        double radius;
+        long limit;
+        try {
+            radius = Double.parseDouble(required(params, "radius"));
+            limit = Long.parseLong(params.getOrDefault("limit", String.valueOf(Long.MAX_VALUE)));
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid radius or limit");
+        }
+        if (!Double.isFinite(radius) || radius < 0) {
+            throw new RequestException(400, "Radius must be a finite number no less than 0");
+        }
+        StringBuilder json = new StringBuilder("{\"from\":").append(quote(from.getName()))
+                .append(",\"radius\":").append(radius)
+                .append(",\"profile\":").append(quote(profile.toString()))
+                .append(",\"settlements\":[");
+        // The search stops as soon as the limit is reached.
+        map.reachableWithin(from, radius, profile).limit(Math.max(0, limit)).forEach(r -> {
+            if (json.charAt(json.length() - 1) != '[') {
+                json.append(',');
+            }
+            json.append("{\"name\":").append(quote(r.getSettlement().getName()))
+                    .append(",\"cost\":").append(r.getDistance()).append('}');
+        });
+        return json.append("]}").toString();
+    }
+
+    private String settlement(HashMap<String, String> params) throws RequestException {
+        Settlement s = settlementParam(params, "name");
+        StringBuilder json = new StringBuilder("{\"name\":").append(quote(s.getName()))
+                .append(",\"population\":").append(s.getPopulation())
+                .append(",\"type\":").append(quote(String.valueOf(s.getKind())));
+        if (s.hasLocation()) {
+            json.append(",\"latitude\":").append(s.getLatitude()).append(",\"longitude\":").append(s.getLongitude());
+        }
+        json.append(",\"roads\":[");
+        ArrayList<Road> roads = map.getRoads(s);
+        for (int i = 0; i < roads.size(); i++) {
+            Road r = roads.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":").append(quote(r.getName()))
+                    .append(",\"classification\":").append(quote(String.valueOf(r.getClassification())))
+                    .append(",\"to\":").append(quote(r.getAlternateSettlement(s).getName()))
+                    .append(",\"length\":").append(r.getLength()).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private String addSettlement(HashMap<String, String> params) throws RequestException {
+        String name = required(params, "name");
+        SettlementType type;
+        int population;
+        try {
+            type = SettlementType.valueOf(required(params, "type").toUpperCase());
+            population = Integer.parseInt(params.getOrDefault("population", "0"));
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Invalid type or population");
+        }
+        if (!map.addSettlement(new Settlement(name, population, type))) {
+            throw new RequestException(409, "Settlement " + name + " already exists");
+        }
+        return "{\"added\":" + quote(name) + "}";
+    }
+
+    private String removeSettlement(HashMap<String, String> params) throws RequestException {
+        Settlement s = settlementParam(params, "name");
+        // Another request may have removed it since it was looked up.
+        if (!map.removeSettlement(s.getName())) {
+            throw new RequestException(404, "Settlement " + s.getName() + " not found");
+        }
+        return "{\"removed\":" + quote(s.getName()) + "}";
+    }
+
+    private String addRoad(HashMap<String, String> params) throws RequestException {
+        String name = required(params, "name");
+        Settlement from = settlementParam(params, "from");
+        Settlement to = settlementParam(params, "to");
+        Classification classification;
+        double length;
+        try {
+            classification = Classification.valueOf(required(params, "classification").toUpperCase());
+            length = Double.parseDouble(required(params, "length"));
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Invalid classification or length");
+        }
+        if (!Road.isValidLength(length)) {
+            throw new RequestException(400, "Length must be a finite number greater than 0");
+        }
+        if (!map.addRoad(name, classification, from, to, length)) {
+            throw new RequestException(409, "Road " + name + " could not be added");
+        }
+        return "{\"added\":" + quote(name) + "}";
+    }
+
+    private String removeRoad(HashMap<String, String> params) throws RequestException {
+        Settlement from = settlementParam(params, "from");
+        Settlement to = settlementParam(params, "to");
+        Road r = map.findRoad(from, to);
+        if (r == null) {
+            throw new RequestException(404, "No road from " + from.getName() + " to " + to.getName());
+        }
+        if (!map.removeRoad(r)) {
+            throw new RequestException(404, "No road from " + from.getName() + " to " + to.getName());
+        }
+        return "{\"removed\":" + quote(r.getName()) + "}";
+    }
+
+    private String metrics() {
+        StringBuilder json = new StringBuilder("{");
+        boolean first = true;
+        for (java.util.Map.Entry<String, LatencyHistogram> e : latencies.entrySet()) {
+            LatencyHistogram h = e.getValue();
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append(quote(e.getKey())).append(":{\"count\":").append(h.getCount())
+                    .append(",\"meanMicros\":").append(Math.round(h.getMeanMicros()))
+                    .append(",\"p50Micros\":").append(h.getPercentileMicros(0.5))
+                    .append(",\"p99Micros\":").append(h.getPercentileMicros(0.99))
+                    .append(",\"maxMicros\":").append(Math.round(h.getMaxMicros())).append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * @return Returns the latencies of each kind of request, by "METHOD /path".
+     */
+    public java.util.Map<String, LatencyHistogram> getLatencies() {
+        return latencies;
+    }
+
+    private static String required(HashMap<String, String> params, String name) throws RequestException {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new RequestException(400, "Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private Settlement settlementParam(HashMap<String, String> params, String name) throws RequestException {
+        String value = required(params, name);
+        Settlement s = map.getSettlement(value);
+        if (s == null) {
+            throw new RequestException(404, "Settlement " + value + " not found");
+        }
+        return s;
+    }
+
+    /**
+     * Reads the optional cost profile parameter, which defaults to the shortest routes.
+     */
+    private static CostProfile profileParam(HashMap<String, String> params) throws RequestException {
+        try {
+            return CostProfile.valueOf(params.getOrDefault("profile", "SHORTEST").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Unknown profile " + params.get("profile"));
+        }
+    }
+
+    /**
+     * Makes a JSON string, escaping quotes, backslashes and control characters.
+     */
+    static String quote(String s) {
+        StringBuilder json = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /* -------------------_Static Stuff_----------------------------- */
+
+    public static void main(String args[]) throws IOException {
+        // Has to be set before the first server is made, as the JDK reads it once.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        Map map = new Map();
+        if (args.length > 1) {
+            map.load(new java.io.File(args[1]));
+        } else {
+            map.load();
+        }
+        map.getMetrics().register("default");
+        RoutingService service = new RoutingService(map, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            service.stop();
+            map.close();
+        }));
+        service.start();
+        System.out.println("Serving the map on http://localhost:" + service.getPort() + "/ with "
+                + (service.usesVirtualThreads() ? "virtual threads" : POOL_THREADS + " threads"));
+    }
+}
@@ -0,0 +1,52 @@
+package maps;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches not being used by any query, so a query can reuse the arrays of one rather than
+ * allocating its own. A query takes a search, moves it on to the routing graph it is using and gives
+ * it back when it is done. Unlike a search per thread this still works when every query has a thread
+ * of its own, as with virtual threads. Only a few searches are kept, so a burst of queries doesn't
+ * keep a search for each of them once it is over.
+ *
+ * @param <T> The type of search.
+ */
+class SearchPool<T> {
+
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    // the number of searches in idle, as ConcurrentLinkedQueue counts them one by one
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+
+    /**
+     * @param capacity The most searches to keep.
+     */
+    SearchPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return Returns a search no other query is using, or null if there isn't one.
+     */
+    T take() {
+        T ret = idle.poll();
+        if (ret != null) {
+            size.decrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * Gives back a search once a query has finished with it. It is dropped if the pool is full.
+     *
+     * @param search The search, which the caller must not use again.
+     */
+    void give(T search) {
+        if (size.incrementAndGet() <= capacity) {
+            idle.offer(search);
+        } else {
+            size.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package maps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Represents a road that is linked to two settlements: source and destination.
+ *
+ * @author Chris Loftus, Josh Smith
+ * @version 3.0 (14th March 2016)
+ */
+public class Settlement {
+    private static final double EARTH_RADIUS_MILES = 3958.8;
+
+    private String name;
+    private int population;
+    private SettlementType kind;
+    private ArrayList<Road> roads;
+    // Location in degrees, NaN when the settlement has no known location.
+    private double latitude = Double.NaN;
+    private double longitude = Double.NaN;
+    // The map the settlement has been added to, told about location changes. Null if not on a map.
+    private Map map;
+    // The id given by the map, -1 if not on a map.
+    private int id = -1;
+
+    /**
+     * Constructor to build a settlement
+     *
+     * @param nm The name of the settlement
+     */
+    public Settlement(String nm, SettlementType k) {
+        this(); // Means call the other constructor
+        name = nm;
+        kind = k;
+    }
+
+    /**
+     * Constructor for a settlement with name, population and settlement type.
+     * @param nm Name of the settlement
+     * @param pop Population of the Settlement
+     * @param k Type of the Settlement
+     */
+    public Settlement(String nm, int pop, SettlementType k) {
+        this();
+        name = nm;
+        kind = k;
+        population = pop;
+    }
+
+    /**
+     * Default constructor which instantiates the ArrayList roads.
+     */
+    public Settlement() {
+        // INSERT CODE HERE
+        roads = new ArrayList<>();
+
+    }
+
+    /**
+     * The name of the settlement. Note that there is no way to change
+     * the name once created.
+     *
+     * @return The name of the settlement.
+     */
+    public String getName() {
+            return name;
+    }
+
+    /**
+     * The current population
+     *
+     * @return The population
+     */
+    public int getPopulation() {
+        return population;
+    }
+
+    /**
+     * Change the population size
+     *
+     * @param size The new population size
+     */
+    public void setPopulation(int size) {
+        Map m = map;
+        if (m != null) {
+            m.setPopulation(this, size);
+        } else {
+            this.population = size;
+        }
+    }
+
+    /**
+     * Changes the population without telling the map, called by the map while it holds the
+     * settlement's lock.
+     */
+    void assignPopulation(int size) {
+        this.population = size;
+    }
+
+    /**
+     * The kind of settlement, e.g. village, town etc
+     *
+     * @return The kind of settlement
+     */
+    public SettlementType getKind() {
+        return kind;
+    }
+
+    /**
+     * The population has grown or the settlement has been granted a new status (e.g. city status)
+     *
+     * @param kind The new settlement kind
+     */
+    public void setKind(SettlementType kind) {
+        Map m = map;
+        if (m != null) {
+            m.setKind(this, kind);
+        } else {
+            this.kind = kind;
+        }
+    }
+
+    /**
+     * Changes the kind without telling the map, called by the map while it holds the settlement's lock.
+     */
+    void assignKind(SettlementType kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * @return Returns true if the settlement has a latitude and longitude.
+     */
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    /**
+     * @return The latitude in degrees, or NaN if the settlement has no location.
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * @return The longitude in degrees, or NaN if the settlement has no location.
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Sets where the settlement is. Pass NaN for both to remove the location.
+     *
+     * @param lat The latitude in degrees.
+     * @param lon The longitude in degrees.
+     */
+    public void setLocation(double lat, double lon) {
+        Map m = map;
+        if (m != null) {
+            // The map moves the settlement under its lock, so it is published in the same step.
+            m.moveSettlement(this, lat, lon);
+        } else {
+            latitude = lat;
+            longitude = lon;
+        }
+    }
+
+    /**
+     * Changes the location without telling the map, called by the map while it holds the
+     * settlement's lock.
+     */
+    void assignLocation(double lat, double lon) {
+        latitude = lat;
+        longitude = lon;
+    }
+
+    /**
+     * The straight line distance over the surface of the earth to another settlement.
+     *
+     * @param other The other settlement.
+     * @return The distance in miles, or NaN if either settlement has no location.
+     */
+    public double greatCircleDistance(Settlement other) {
+        return greatCircleMiles(latitude, longitude, other.latitude, other.longitude);
+    }
+
+    /**
+     * Uses the haversine formula to find the distance between two points on the earth.
+     *
+     * @param lat1 The latitude of the first point in degrees.
+     * @param lon1 The longitude of the first point in degrees.
+     * @param lat2 The latitude of the second point in degrees.
+     * @param lon2 The longitude of the second point in degrees.
+     * @return The distance between the points in miles.
+     */
+    public static double greatCircleMiles(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_MILES * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Sets the map this settlement belongs to, called by the map when the settlement is added or removed.
+     *
+     * @param m     The map, or null if the settlement is no longer on a map.
+     * @param newId The id the map has given the settlement, -1 if it is no longer on a map.
+     */
+    void setMap(Map m, int newId) {
+        map = m;
+        id = newId;
+    }
+
+    /**
+     * The id of the settlement on its map. Ids are small and reused once a settlement is removed, so
+     * they can index arrays with one entry for each settlement on the map.
+     *
+     * @return Returns the id, or -1 if the settlement isn't on a map.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Add a new road to the settlement.
+     *
+     * @param road The new road to add.
+     * @throws IllegalArgumentException if the settlement already contains the road
+     */
+    public void add(Road road) throws IllegalArgumentException {
+        // ADD CODE HERE
+        roads.add(road);
+    }
+
+    /**
+     * Adds several new roads to the settlement at once.
+     *
+     * @param newRoads The roads to add.
+     */
+    void addRoads(Collection<Road> newRoads) {
+        roads.addAll(newRoads);
+    }
+
+    /**
+     * Returns a ArrayList of Roads that match the given name
+     *
+     * @param name The name of the road to find
+     * @return An ArrayList of Road objects (will be a maximum of two
+     * items for any settlements: e.g. A487 goes from Aber to
+     * Penparcau and from Aber to Bow Street
+     */
+    public ArrayList<Road> findRoads(String name) {
+        ArrayList<Road> roadsFound = new ArrayList<>();
+
+        for (Road r : roads) {
+            if (r.getName() == name) {
+                roadsFound.add(r);
+            }
+        }
+
+        return roadsFound;
+    }
+
+    /**
+     * Finds a road which leads from this Settlement directly to a destination settlement.
+     *
+     * @param dest The destination settlement.
+     * @return A road which connects this settlement to the destination settlement.
+     */
+    public Road getRoadTo(Settlement dest) {
+        for (Road r : roads) {
+            if (r.getAlternateSettlement(this).equals(dest)) {
+                return r;
+            }
+        }
+        // if nothing found
+        return null;
+    }
+
+    /**
+     * Deletes all the roads attached to this settlement. It will
+     * also detach these roads from the settlements at the other end
+     * of each road
+     */
+    public void deleteRoads() {
+        // The neighbours' roads change too, so on a map every settlement is locked.
+        Map m = map;
+        if (m != null) {
+            m.lockAll();
+        }
+        try {
+            // Loop over a copy, a road from this settlement back to itself is removed from roads as we go.
+            ArrayList<Road> deleted = new ArrayList<>(roads);
+            for (Road r : deleted) {
+                this.disconnectRoad(r);
+            }
+
+            roads.clear();
+            if (map != null) {
+                map.roadsDeleted(this, deleted);
+            }
+        } finally {
+            if (m != null) {
+                m.unlockAll();
+            }
+        }
+    }
+
+    /**
+     * Deletes the given road attached to this settlement. It will
+     * also detach this road from the settlement at the other end
+     * of the road
+     *
+     * @param road The road to disconnectRoad.
+     */
+    public void disconnectRoad(Road road) {
+        for (Road r : roads) {
+            if (r.equals(road)) {
+                // Delete the road from the other settlement.
+                r.getAlternateSettlement(this).removeRoad(road);
+
+                // Stop looping through
+                break;
+            }
+        }
+    }
+
+    /**
+     * Removes a given road from the list of roads connected to the settlement.
+     * @param road A road to be removed.
+     */
+    public void removeRoad(Road road) {
+        roads.remove(road);
+    }
+
+    /**
+     * @return Returns the number of roads attached to this settlement.
+     */
+    public int getRoadCount() {
+        return roads.size();
+    }
+
+    /**
+     * Returns one of the roads attached to this settlement without copying the list, so a loop from
+     * 0 to getRoadCount() - 1 visits every road without creating any objects.
+     *
+     * @param index The position of the road, from 0 to getRoadCount() - 1.
+     * @return The road at that position.
+     * @throws IndexOutOfBoundsException if there is no road at that position.
+     */
+    public Road getRoad(int index) {
+        return roads.get(index);
+    }
+
+    /**
+     * Passes each road attached to this settlement to an action without copying the list. The
+     * action must not add or remove roads from this settlement.
+     *
+     * @param action The action to run on each road.
+     */
+    public void forEachRoad(Consumer<Road> action) {
+        for (int i = 0; i < roads.size(); i++) {
+            action.accept(roads.get(i));
+        }
+    }
+
+    /**
+     * Returns a list of all the roads connected to this settlement
+     *
+     * @return The roads attached to this settlement
+     */
+    public ArrayList<Road> getAllRoads() {
+        // Notice how we create a separate array list object
+        // and return that instead of the roads. This is so
+        // that we don't break encapsulation and data hiding.
+        // If I returned roads, then the calling code could change
+        // change it directly which would be dangerous
+        ArrayList<Road> result = new ArrayList<>(roads);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        Settlement other = (Settlement) obj;
+        // Names are unique on a map, so a settlement on a map is only equal to itself and the ids
+        // can be compared instead of the names.
+        if (map != null || other.map != null) {
+            return map == other.map && id == other.id;
+        }
+        if (name == null) {
+            if (other.name != null)
+                return false;
+        } else if (!name.equals(other.name))
+            return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // The hash changes when the settlement is added to or removed from a map, so it shouldn't
+        // be in a hashed collection at the time.
+        return map != null ? id : name.hashCode();
+    }
+
+    /**
+     * The state of the settlement including information about
+     * connected roads
+     *
+     * @return The data in the settlement object.
+     */
+    public String toString() {
+        String result = "";
+        result += "Settlement Name = " + this.getName() + "\n" +
+                "Population = " + this.getPopulation() + "\n" +
+                "Kind = " + this.getKind().toString() + "\n";
+
+        if (roads.size() > 0) {
+            result += "Roads = \n";
+            for (int i = 0; i < roads.size(); i++) {
+                Road r = roads.get(i);
+                result += indent(1) + r.getName() + " connected to " + r.getAlternateSettlement(this).getName() + "\n";
+            }
+        } else {
+            result += "There are no roads connected to this settlement.";
+        }
+        return result + "\n";
+    }
+
+    private String indent(int level) {
+        String ret = "";
+        for (int i = 0; i < level; i++) {
+            ret += "  ";
+        }
+        return ret;
+    }
+}
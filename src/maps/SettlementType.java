@@ -1,3 +1,5 @@
+package maps;
+
 
 /**
  * Enumeration of the common settlement types
@@ -0,0 +1,67 @@
+package maps;
+
+import java.util.ArrayList;
+
+/**
+ * The shortest routes from one settlement to every settlement it can reach, as worked out by a
+ * complete Dijkstra's search. Once built any route from the source is found by walking back up the
+ * tree, without searching again.
+ */
+public class ShortestPathTree {
+
+    private RoutingGraph graph;
+    private int source;
+    // dist[v] is the length of the shortest route to v, infinite if v can't be reached.
+    private double[] dist;
+    // prev[v] is the edge taken into v on its shortest route, -1 if there isn't one.
+    private int[] prev;
+
+    /**
+     * Builds the tree by running a Dijkstra's search from the source until every settlement it can
+     * reach is settled.
+     *
+     * @param search A search which has been reset to the source, it is left finished.
+     */
+    ShortestPathTree(Dijkstras search) {
+        search.settleAll();
+        graph = search.getGraph();
+        source = search.getSource();
+        dist = search.copyDistances();
+        prev = search.copyTree();
+    }
+
+    /**
+     * @return Returns the routing graph the tree was built on.
+     */
+    public RoutingGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return Returns the settlement the routes start from.
+     */
+    public Settlement getSource() {
+        return graph.getSettlement(source);
+    }
+
+    /**
+     * @param dest The destination settlement.
+     * @return The length of the shortest route in miles, infinite if there isn't one.
+     */
+    public double distance(Settlement dest) {
+        int d = graph.getId(dest);
+        return d == -1 ? Double.POSITIVE_INFINITY : dist[d];
+    }
+
+    /**
+     * @param dest The destination settlement.
+     * @return An ArrayList of roads in the order of the route, or null if dest can't be reached.
+     */
+    public ArrayList<Road> shortestRoute(Settlement dest) {
+        int d = graph.getId(dest);
+        if (d == -1) {
+            return null;
+        }
+        return graph.routeFromTree(prev, source, d);
+    }
+}
@@ -0,0 +1,166 @@
+package maps;
+
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded cache of shortest path trees keyed by their source settlement. When it is full the tree
+ * which was used least recently is thrown away. Every tree is tagged with the version of the map it
+ * was built from, and trees from an older version are never handed out. The cache can be shared by
+ * queries on several threads.
+ * <p>
+ * Building a tree settles every settlement on the map, which costs far more than a query which
+ * stops at its destination. So a tree is only built for a source which has missed before, and a
+ * source asked for once is routed with an ordinary search.
+ */
+public class ShortestPathTreeCache {
+
+    private int capacity;
+    // A LinkedHashMap in access order keeps the least recently used tree first.
+    private LinkedHashMap<Settlement, ShortestPathTree> trees;
+    // Sources which have missed once without a tree being built, least recently missed first.
+    private LinkedHashMap<Settlement, Boolean> candidates;
+    // the map version the cached trees were built from
+    private int version;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Constructor for an empty cache.
+     *
+     * @param capacity The most trees to keep, each costs twelve bytes per settlement on the map.
+     */
+    public ShortestPathTreeCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative.");
+        }
+        this.capacity = capacity;
+        trees = new LinkedHashMap<>(16, 0.75f, true);
+        candidates = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Looks up the shortest path tree from a source for a version of the map. A lookup which finds
+     * nothing counts as a miss, and can be followed by add.
+     *
+     * @param source  The settlement the routes start from.
+     * @param version The version of the map the query is on.
+     * @return Returns the cached tree, or null if there isn't one for that version.
+     */
+    public synchronized ShortestPathTree get(Settlement source, int version) {
+        if (version > this.version) {
+            // The map has changed, so none of the cached trees can be trusted.
+            invalidations += trees.size();
+            trees.clear();
+            candidates.clear();
+            this.version = version;
+        }
+        ShortestPathTree tree = version == this.version ? trees.get(source) : null;
+        if (tree != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return tree;
+    }
+
+    /**
+     * Builds and caches the tree from a source after a miss, if the source has missed before. The
+     * tree is built without holding the cache's lock, so queries on other threads aren't held up
+     * while it is built.
+     *
+     * @param source The settlement the routes start from.
+     * @param search A search on the routing graph of the query, which is reset to the source if the
+     *               tree is built.
+     * @return Returns the new tree, or null if the source hasn't missed before and should be routed
+     * with an ordinary search.
+     */
+    public ShortestPathTree add(Settlement source, Dijkstras search) {
+        int current = search.getGraph().getVersion();
+        synchronized (this) {
+            if (capacity == 0 || current != version) {
+                return null;
+            }
+            if (candidates.remove(source) == null) {
+                if (candidates.size() >= capacity) {
+                    candidates.remove(candidates.keySet().iterator().next());
+                }
+                candidates.put(source, Boolean.TRUE);
+                return null;
+            }
+        }
+        search.reset(source);
+        ShortestPathTree tree = new ShortestPathTree(search);
+        synchronized (this) {
+            // A query on a snapshot older than the cached trees doesn't add its tree.
+            if (current == version) {
+                if (!trees.containsKey(source) && trees.size() >= capacity) {
+                    trees.remove(trees.keySet().iterator().next());
+                    evictions++;
+                }
+                trees.put(source, tree);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Throws away every cached tree.
+     */
+    public synchronized void clear() {
+        invalidations += trees.size();
+        trees.clear();
+        candidates.clear();
+    }
+
+    /**
+     * @return Returns the most trees the cache keeps.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Returns the number of trees in the cache.
+     */
+    public synchronized int size() {
+        return trees.size();
+    }
+
+    /**
+     * @return Returns the number of lookups which found an up to date tree.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Returns the number of lookups which found no tree.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Returns the number of trees thrown away to make room for newer ones.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Returns the number of trees thrown away because the map changed.
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @return Returns the statistics on one line.
+     */
+    public synchronized String toString() {
+        return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", invalidations=" + invalidations + ", size=" + trees.size() + "/" + capacity;
+    }
+}
@@ -0,0 +1,143 @@
+package maps;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Edits one map from several threads at once and then checks that it is still consistent. Each
+ * thread adds settlements, some with names other threads also use, and adds roads between random
+ * settlements, so threads often race to join the same two places. It also removes roads, changes
+ * their lengths and now and then removes a settlement with all of its roads. Afterwards every road
+ * must be on the map and in the road lists of both of its settlements, no two roads may join the
+ * same settlements, and the snapshot queries use must hold exactly what is on the map.
+ */
+class ConcurrentEditTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 2000;
+    private static final int SETTLEMENT_NAMES = 300;
+
+    @Test
+    void mapStaysConsistentUnderConcurrentEdits() throws InterruptedException {
+        Map map = new Map();
+        // The map reports every rejected road, and plenty are rejected on purpose.
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Thread[] workers = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                long seed = t;
+                workers[t] = new Thread(() -> edit(map, new Random(seed)));
+                workers[t].start();
+            }
+            for (Thread w : workers) {
+                w.join();
+            }
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        ArrayList<String> problems = check(map);
+        assertTrue(problems.isEmpty(), String.join("\n", problems));
+        assertTrue(map.getRoads().size() > 0, "no roads were left to check");
+    }
+
+    private static void edit(Map map, Random random) {
+        Classification[] classes = Classification.values();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int choice = random.nextInt(100);
+            if (choice < 30) {
+                map.addSettlement(new Settlement("S" + random.nextInt(SETTLEMENT_NAMES), random.nextInt(100000),
+                        SettlementType.TOWN));
+            } else if (choice < 80) {
+                Settlement a = map.getSettlement("S" + random.nextInt(SETTLEMENT_NAMES));
+                Settlement b = map.getSettlement("S" + random.nextInt(SETTLEMENT_NAMES));
+                if (a != null && b != null) {
+                    map.addRoad("R" + random.nextInt(100), classes[random.nextInt(classes.length)], a, b,
+                            1 + random.nextInt(50));
+                }
+            } else if (choice == 99) {
+                map.removeSettlement("S" + random.nextInt(SETTLEMENT_NAMES));
+            } else {
+                Settlement a = map.getSettlement("S" + random.nextInt(SETTLEMENT_NAMES));
+                // A copy made under the settlement's lock, as other threads are changing its roads.
+                ArrayList<Road> roads = a == null ? new ArrayList<>() : map.getRoads(a);
+                if (roads.isEmpty()) {
+                    continue;
+                }
+                Road r = roads.get(random.nextInt(roads.size()));
+                if (choice < 90) {
+                    r.setLength(1 + random.nextInt(50));
+                } else {
+                    map.removeRoad(r);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the map once every thread has finished with it.
+     *
+     * @return Returns a description of each problem found.
+     */
+    private static ArrayList<String> check(Map map) {
+        ArrayList<String> problems = new ArrayList<>();
+        HashSet<Settlement> onMap = new HashSet<>(map.getSettlements());
+        if (onMap.size() != map.getSettlements().size()) {
+            problems.add("A settlement is in the list more than once.");
+        }
+        HashSet<String> pairs = new HashSet<>();
+        for (Road r : map.getRoads()) {
+            Settlement a = r.getSourceSettlement();
+            Settlement b = r.getDestinationSettlement();
+            if (r.getId() == -1 || map.getRoad(r.getId()) != r) {
+                problems.add("Road " + r.getName() + " is listed but has no id.");
+            }
+            if (!onMap.contains(a) || !onMap.contains(b)) {
+                problems.add("Road " + r.getName() + " is orphaned, one of its settlements isn't on the map.");
+            }
+            if (map.getRoads(a).stream().noneMatch(x -> x == r) || map.getRoads(b).stream().noneMatch(x -> x == r)) {
+                problems.add("Road " + r.getName() + " is missing from one of its settlements.");
+            }
+            String pair = a.getName().compareTo(b.getName()) < 0 ? a.getName() + ":" + b.getName()
+                    : b.getName() + ":" + a.getName();
+            if (!pairs.add(pair)) {
+                problems.add("More than one road joins " + pair + ".");
+            }
+        }
+        HashSet<Road> listed = new HashSet<>(map.getRoads());
+        for (Settlement s : map.getSettlements()) {
+            if (map.getSettlement(s.getName()) != s || map.getSettlement(s.getId()) != s) {
+                problems.add("Settlement " + s.getName() + " isn't indexed.");
+            }
+            for (Road r : map.getRoads(s)) {
+                if (!listed.contains(r)) {
+                    problems.add("Settlement " + s.getName() + " has road " + r.getName() + " which isn't on the map.");
+                }
+            }
+        }
+        GraphSnapshot snapshot = map.getSnapshot();
+        if (snapshot.getSettlementCount() != map.getSettlements().size()
+                || snapshot.getRoadCount() != map.getRoads().size()) {
+            problems.add("The snapshot has " + snapshot.getSettlementCount() + " settlements and "
+                    + snapshot.getRoadCount() + " roads, the map has " + map.getSettlements().size() + " and "
+                    + map.getRoads().size() + ".");
+        }
+        for (Road r : map.getRoads()) {
+            GraphSnapshot.RoadState state = snapshot.getRoad(r.getId());
+            if (state == null || state.getRoad() != r || state.getLength() != r.getLength()) {
+                problems.add("The snapshot doesn't have road " + r.getName() + " as it is.");
+            }
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,93 @@
+package maps;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that changes made after a map is saved are journalled, and that loading the directory again
+ * replays them onto the saved map.
+ */
+class MapJournalTest {
+
+    @TempDir
+    File directory;
+
+    private final ArrayList<Map> maps = new ArrayList<>();
+
+    @AfterEach
+    void closeMaps() {
+        for (Map map : maps) {
+            map.close();
+        }
+    }
+
+    @Test
+    void replaysEditsMadeAfterASave() throws IOException {
+        Map map = open(new MapGenerator(MapGenerator.Topology.GRID, 100, 5).generate());
+        map.save(directory);
+
+        Settlement added = new Settlement("Newtown", 1200, SettlementType.TOWN);
+        added.setLocation(52.4, -4.1);
+        assertTrue(map.addSettlement(added));
+        ArrayList<Settlement> settlements = map.getSettlements();
+        assertTrue(map.addRoad("A487", Classification.A, added, settlements.get(0), 12.5));
+        Road removed = map.getRoads().get(3);
+        assertTrue(map.removeRoad(removed));
+        map.getRoads().get(7).setLength(99);
+        assertTrue(map.removeSettlement(settlements.get(10).getName()));
+        map.close();
+
+        Map loaded = open(new Map());
+        loaded.load(directory);
+        assertEquals(describe(map), describe(loaded));
+    }
+
+    @Test
+    void replaysABulkImport() throws IOException {
+        Map map = open(new MapGenerator(MapGenerator.Topology.GRID, 50, 5).generate());
+        map.save(directory);
+        String existing = map.getSettlements().get(0).getName();
+        ImportReport report = map.bulkImport(
+                Stream.of(new Settlement("Imported", 300, SettlementType.VILLAGE)),
+                Stream.of(new RoadRecord("B4353", Classification.B, 4, "Imported", existing)));
+        assertTrue(report.getRejections().isEmpty());
+        map.close();
+
+        Map loaded = open(new Map());
+        loaded.load(directory);
+        assertEquals(describe(map), describe(loaded));
+    }
+
+    private Map open(Map map) {
+        maps.add(map);
+        return map;
+    }
+
+    /**
+     * Lists every settlement and road with the fields which are saved, in an order which doesn't
+     * depend on the order they were added in.
+     */
+    private static ArrayList<String> describe(Map map) {
+        ArrayList<String> lines = new ArrayList<>();
+        for (Settlement s : map.getSettlements()) {
+            lines.add(s.getName() + ":" + s.getPopulation() + ":" + s.getKind() + ":" + s.getLatitude() + ":"
+                    + s.getLongitude());
+        }
+        for (Road r : map.getRoads()) {
+            lines.add(r.getName() + ":" + r.getClassification() + ":" + r.getLength() + ":"
+                    + r.getSourceSettlement().getName() + ":" + r.getDestinationSettlement().getName());
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+}
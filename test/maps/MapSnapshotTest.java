@@ -0,0 +1,51 @@
+package maps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a binary snapshot reads back as the map it was written from, and that a damaged one
+ * is rejected rather than loaded.
+ */
+class MapSnapshotTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void readsBackTheSameMap() throws IOException {
+        Map map = new MapGenerator(MapGenerator.Topology.RANDOM_GEOMETRIC, 200, 3).generate();
+        File file = new File(directory, MapSnapshot.FILE_NAME);
+        map.capture().writeBinary(file.getPath(), 5);
+
+        Map read = new Map();
+        assertEquals(5, MapSnapshot.read(file.getPath(), read));
+        assertEquals(5, MapSnapshot.readGeneration(file.getPath()));
+        assertEquals(map.toString(), read.toString());
+    }
+
+    @Test
+    void rejectsADamagedSnapshot() throws IOException {
+        Map map = new MapGenerator(MapGenerator.Topology.GRID, 200, 3).generate();
+        File file = new File(directory, MapSnapshot.FILE_NAME);
+        map.capture().writeBinary(file.getPath(), 1);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long middle = raf.length() / 2;
+            raf.seek(middle);
+            int b = raf.read();
+            raf.seek(middle);
+            raf.write(b ^ 0x10);
+        }
+
+        IOException e = assertThrows(IOException.class, () -> MapSnapshot.read(file.getPath(), new Map()));
+        assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+    }
+}
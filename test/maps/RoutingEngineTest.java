@@ -0,0 +1,251 @@
+package maps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the routing engines against Dijkstra's algorithm: the distances given by contraction
+ * hierarchies and hub labels, and the routes found by Map in every routing mode and cost profile, on
+ * each kind of generated map and again after the map has been edited. Also checks the costs of the
+ * profiles, bounded reachability and that cached routes follow a change of length.
+ */
+class RoutingEngineTest {
+
+    private static final int SIZE = 400;
+    private static final int PAIRS = 200;
+    private static final int ROUTE_PAIRS = 50;
+
+    @ParameterizedTest
+    @EnumSource(MapGenerator.Topology.class)
+    void distancesMatchDijkstras(MapGenerator.Topology topology) {
+        Map map = new MapGenerator(topology, SIZE, 7).generate();
+        assertDistancesMatch(map, new Random(1));
+    }
+
+    @ParameterizedTest
+    @EnumSource(MapGenerator.Topology.class)
+    void distancesMatchDijkstrasAfterEdits(MapGenerator.Topology topology) {
+        Map map = new MapGenerator(topology, SIZE, 7).generate();
+        Random random = new Random(2);
+        edit(map, random);
+        assertDistancesMatch(map, random);
+    }
+
+    /**
+     * Every routing mode with every profile it can route by. Contraction hierarchies and hub labels
+     * only find the shortest routes.
+     */
+    private static Stream<Arguments> modesAndProfiles() {
+        return Arrays.stream(RoutingMode.values()).flatMap(mode -> Arrays.stream(CostProfile.values())
+                .filter(profile -> profile == CostProfile.SHORTEST || !shortestOnly(mode))
+                .map(profile -> Arguments.of(mode, profile)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("modesAndProfiles")
+    void routesMatchDijkstras(RoutingMode mode, CostProfile profile) {
+        for (MapGenerator.Topology topology : MapGenerator.Topology.values()) {
+            Map map = new MapGenerator(topology, SIZE, 11).generate();
+            Random random = new Random(3);
+            assertRoutesMatch(map, mode, profile, random);
+            edit(map, random);
+            assertRoutesMatch(map, mode, profile, random);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(RoutingMode.class)
+    void shortestOnlyModesRejectOtherProfiles(RoutingMode mode) {
+        Map map = new MapGenerator(MapGenerator.Topology.GRID, 25, 1).generate();
+        Settlement a = map.getSettlements().get(0);
+        Settlement b = map.getSettlements().get(24);
+        if (shortestOnly(mode)) {
+            assertThrows(IllegalArgumentException.class, () -> map.findRoute(a, b, mode, CostProfile.FASTEST));
+        } else {
+            assertNotNull(map.findRoute(a, b, mode, CostProfile.FASTEST), mode + " found no route");
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(CostProfile.class)
+    void profileWeightsAreTheCostOfEachRoad(CostProfile profile) {
+        Map map = new MapGenerator(MapGenerator.Topology.HIERARCHICAL, SIZE, 5).generate();
+        RoutingGraph graph = map.getRoutingGraph();
+        double[] weights = graph.weights(profile);
+        for (int u = 0; u < graph.size(); u++) {
+            for (int e = graph.edgeStart(u); e < graph.edgeEnd(u); e++) {
+                Road road = graph.getRoad(e);
+                assertEquals(road.getLength() * profile.getCostPerMile(road.getClassification()), weights[e], 0,
+                        profile + " weight of " + road.getName());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(CostProfile.class)
+    void reachableWithinIsInOrderAndBounded(CostProfile profile) {
+        Map map = new MapGenerator(MapGenerator.Topology.RANDOM_GEOMETRIC, SIZE, 9).generate();
+        RoutingGraph graph = map.getRoutingGraph();
+        Settlement source = map.getSettlements().get(17);
+        Dijkstras search = new Dijkstras(graph, source);
+        search.reset(source, profile);
+        search.settleAll();
+        // A radius reaching about a quarter of the map, whatever its scale.
+        double[] costs = map.getSettlements().stream().mapToDouble(s -> search.getDistance(graph.getId(s)))
+                .filter(Double::isFinite).sorted().toArray();
+        double radius = costs[costs.length / 4];
+
+        List<ReachableSettlement> reached = map.reachableWithin(source, radius, profile).collect(Collectors.toList());
+        double last = 0;
+        for (ReachableSettlement r : reached) {
+            assertTrue(r.getDistance() >= last, "out of order at " + r.getSettlement().getName());
+            assertTrue(r.getDistance() <= radius, r.getSettlement().getName() + " is beyond the radius");
+            assertEquals(search.getDistance(graph.getId(r.getSettlement())), r.getDistance(), 1e-9,
+                    "distance to " + r.getSettlement().getName());
+            last = r.getDistance();
+        }
+        long within = map.getSettlements().stream()
+                .filter(s -> search.getDistance(graph.getId(s)) <= radius).count();
+        assertEquals(within, reached.size(), "settlements within " + radius);
+        assertTrue(reached.size() > 1 && reached.size() < SIZE, "the radius should reach some of the map");
+
+        List<ReachableSettlement> fromList = map.reachableWithin(Arrays.asList(source), radius, profile).get(0);
+        assertEquals(reached.size(), fromList.size(), "settlements reached from a list of sources");
+        for (double bad : new double[]{-1, Double.NaN, Double.POSITIVE_INFINITY}) {
+            assertThrows(IllegalArgumentException.class, () -> map.reachableWithin(source, bad, profile));
+        }
+    }
+
+    @Test
+    void cachedRoutesFollowAChangeOfLength() {
+        Map map = new MapGenerator(MapGenerator.Topology.GRID, SIZE, 4).generate();
+        map.setRouteCacheSize(8);
+        Settlement a = map.getSettlements().get(0);
+        Settlement b = map.getSettlements().get(SIZE - 1);
+        // The tree of a source is only cached the second time it misses.
+        ArrayList<Road> before = map.findRoute(a, b);
+        map.findRoute(a, b);
+        assertEquals(before, map.findRoute(a, b), "route from the cached tree");
+        assertTrue(map.getRouteCache().getHits() > 0, "the route should have come from the cache");
+
+        Road changed = before.get(before.size() / 2);
+        changed.setLength(changed.getLength() * 1000);
+        ArrayList<Road> after = map.findRoute(a, b);
+        assertRoute(map, a, b, after, CostProfile.SHORTEST, dijkstraCost(map.getRoutingGraph(), a, b,
+                CostProfile.SHORTEST), "after the change");
+        assertTrue(!after.contains(changed), "the route still uses the road made longer");
+    }
+
+    private static boolean shortestOnly(RoutingMode mode) {
+        return mode == RoutingMode.CONTRACTION_HIERARCHY || mode == RoutingMode.HUB_LABELS;
+    }
+
+    /**
+     * Removes and lengthens some roads, adds some new ones and removes a settlement.
+     */
+    private static void edit(Map map, Random random) {
+        ArrayList<Road> roads = new ArrayList<>(map.getRoads());
+        for (int i = 0; i < 20; i++) {
+            map.removeRoad(roads.get(random.nextInt(roads.size())));
+            Road r = roads.get(random.nextInt(roads.size()));
+            if (r.getId() != -1) {
+                r.setLength(r.getLength() * 2);
+            }
+        }
+        ArrayList<Settlement> settlements = map.getSettlements();
+        for (int i = 0; i < 20; i++) {
+            Settlement a = settlements.get(random.nextInt(settlements.size()));
+            Settlement b = settlements.get(random.nextInt(settlements.size()));
+            if (a != b) {
+                map.addRoad("New" + i, Classification.A, a, b, 1 + random.nextInt(20));
+            }
+        }
+        map.removeSettlement(settlements.get(random.nextInt(settlements.size())).getName());
+    }
+
+    private static void assertDistancesMatch(Map map, Random random) {
+        RoutingGraph graph = map.getRoutingGraph();
+        ContractionHierarchy hierarchy = new ContractionHierarchy(graph);
+        HubLabels labels = new HubLabels(graph);
+        HubLabels hierarchyLabels = new HubLabels(hierarchy);
+        ArrayList<Settlement> settlements = map.getSettlements();
+        for (int i = 0; i < PAIRS; i++) {
+            Settlement source = settlements.get(random.nextInt(settlements.size()));
+            Settlement dest = settlements.get(random.nextInt(settlements.size()));
+            double expected = dijkstraCost(graph, source, dest, CostProfile.SHORTEST);
+            double tolerance = 1e-9 * Math.max(1, expected);
+            String pair = source.getName() + " to " + dest.getName();
+            assertEquals(expected, hierarchy.distance(source, dest), tolerance, "contraction hierarchy, " + pair);
+            assertEquals(expected, labels.distance(source, dest), tolerance, "hub labels, " + pair);
+            assertEquals(expected, hierarchyLabels.distance(source, dest), tolerance,
+                    "hub labels in contraction order, " + pair);
+        }
+    }
+
+    private static void assertRoutesMatch(Map map, RoutingMode mode, CostProfile profile, Random random) {
+        RoutingGraph graph = map.getRoutingGraph();
+        ArrayList<Settlement> settlements = map.getSettlements();
+        for (int i = 0; i < ROUTE_PAIRS; i++) {
+            Settlement source = settlements.get(random.nextInt(settlements.size()));
+            Settlement dest = settlements.get(random.nextInt(settlements.size()));
+            ArrayList<Road> route = map.findRoute(source, dest, mode, profile);
+            assertRoute(map, source, dest, route, profile, dijkstraCost(graph, source, dest, profile),
+                    mode + " " + profile);
+        }
+    }
+
+    /**
+     * Checks that a route is a chain of roads on the map leading from source to dest, or null when
+     * there is no route, and that its cost by the profile is the one expected.
+     */
+    private static void assertRoute(Map map, Settlement source, Settlement dest, List<Road> route,
+                                     CostProfile profile, double expected, String what) {
+        String pair = what + ", " + source.getName() + " to " + dest.getName();
+        if (expected == Double.POSITIVE_INFINITY) {
+            assertNull(route, pair + " found a route where there is none");
+            return;
+        }
+        assertNotNull(route, pair + " found no route");
+        Settlement at = source;
+        double cost = 0;
+        for (Road r : route) {
+            // A shortcut must have been unpacked into the road it stands for.
+            assertSame(r, map.findRoad(r.getSourceSettlement(), r.getDestinationSettlement()),
+                    pair + " uses a road which isn't on the map");
+            if (r.getSourceSettlement() == at) {
+                at = r.getDestinationSettlement();
+            } else {
+                assertSame(at, r.getDestinationSettlement(), pair + " is broken at " + r.getName());
+                at = r.getSourceSettlement();
+            }
+            cost += profile.cost(r);
+        }
+        assertSame(dest, at, pair + " ends in the wrong place");
+        assertEquals(expected, cost, 1e-9 * Math.max(1, expected), pair);
+    }
+
+    private static double dijkstraCost(RoutingGraph graph, Settlement source, Settlement dest, CostProfile profile) {
+        Dijkstras search = new Dijkstras(graph, source);
+        search.reset(source, profile);
+        search.shortestRoute(dest);
+        int id = graph.getId(dest);
+        return id == -1 ? Double.POSITIVE_INFINITY : search.getDistance(id);
+    }
+}